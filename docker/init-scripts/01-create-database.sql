@@ -23,12 +23,28 @@ BEGIN
         description NVARCHAR(1000),
         effective_date DATE,
         status NVARCHAR(50),
+        row_hash BIGINT,
+        version INT,
         created_date DATETIME2 DEFAULT GETDATE(),
         updated_date DATETIME2 DEFAULT GETDATE()
     );
 END
 GO
 
+-- Add the business-field hash used by the upserts to detect changes
+IF COL_LENGTH('Orders', 'row_hash') IS NULL
+BEGIN
+    ALTER TABLE [Orders] ADD row_hash BIGINT;
+END
+GO
+
+-- Add the event version used by the upserts to reject stale events
+IF COL_LENGTH('Orders', 'version') IS NULL
+BEGIN
+    ALTER TABLE [Orders] ADD version INT;
+END
+GO
+
 -- Insert sample data
 IF NOT EXISTS (SELECT 1 FROM [Orders] WHERE id = 1)
 BEGIN
@@ -12,6 +12,7 @@ import java.util.Objects;
 @EqualsAndHashCode
 public class OrderEntity {
     private int id;
+    private int version;
     private String name;
     private String description;
     private LocalDate effectiveDate;
@@ -26,4 +27,9 @@ public class OrderEntity {
                 !Objects.equals(this.effectiveDate, other.effectiveDate) ||
                 !Objects.equals(this.status, other.status);
     }
+
+    // Compact hash of the same business fields, see OrderFingerprint
+    public long businessFingerprint() {
+        return OrderFingerprint.of(name, description, effectiveDate, status);
+    }
 }
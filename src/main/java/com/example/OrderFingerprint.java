@@ -0,0 +1,46 @@
+package com.example;
+
+import java.time.LocalDate;
+
+/**
+ * 64-bit FNV-1a hash over the business fields of an order, i.e. the fields
+ * {@link OrderEntity#hasBusinessFieldsChanged(OrderEntity)} compares.
+ * Equal fields always give an equal fingerprint; a null field hashes differently from an empty one.
+ */
+public final class OrderFingerprint {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private OrderFingerprint() {
+    }
+
+    public static long of(String name, String description, LocalDate effectiveDate, String status) {
+        long hash = OFFSET_BASIS;
+        hash = mix(hash, name);
+        hash = mix(hash, description);
+        hash = mix(hash, effectiveDate == null ? -1L : effectiveDate.toEpochDay());
+        hash = mix(hash, status);
+        return hash;
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            return mix(hash, -1L);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * PRIME;
+            hash = (hash ^ (c >>> 8)) * PRIME;
+        }
+        // Field separator so ("ab", "c") and ("a", "bc") differ
+        return mix(hash, (long) value.length());
+    }
+
+    private static long mix(long hash, long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xff)) * PRIME;
+        }
+        return hash;
+    }
+}
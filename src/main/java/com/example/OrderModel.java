@@ -1,17 +1,20 @@
 package com.example;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
-import lombok.extern.jackson.Jacksonized;
+import lombok.NoArgsConstructor;
 import org.springframework.boot.convert.DataSizeUnit;
 import org.wildfly.common.annotation.NotNull;
 
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
 
-@Jacksonized
+// Bound by Jackson through the no-args constructor and setters, the builder is for producers only
 @Builder
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class OrderModel {
 
     @NotNull
@@ -31,4 +34,10 @@ public class OrderModel {
     @NotNull
     private StatusEnum status;
 
+    // Same hash as OrderEntity#businessFingerprint() for the entity this order maps to
+    public long businessFingerprint() {
+        return OrderFingerprint.of(name, description,
+                effectiveDate == null ? null : effectiveDate.toLocalDate(),
+                status == null ? null : status.name());
+    }
 }
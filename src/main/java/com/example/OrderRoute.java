@@ -4,10 +4,15 @@ import com.github.javafaker.Faker;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.kafka.KafkaConstants;
 import org.apache.camel.model.dataformat.JsonLibrary;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
 import java.time.OffsetDateTime;
 import java.util.*;
 
-//@Component
+// Alternative upsert strategy, selected with order.route.variant=v1
+@Component("orderRouteV1")
+@ConditionalOnProperty(name = "order.route.variant", havingValue = "v1")
 public class OrderRoute extends RouteBuilder {
 
     @Override
@@ -19,11 +24,6 @@ public class OrderRoute extends RouteBuilder {
                 .process(exchange -> {
                     String[] possibleStatus = {"APPROVED", "CANCELLED", "DONE", "DRAFT"};
 
-                    int randomCount = faker.random().nextInt(5000, 10000);
-                    List<String> randomLengthList = new ArrayList<>();
-                    for (int i = 0; i < randomCount; i++) {
-                        randomLengthList.add(faker.idNumber().valid());
-                    }
                     OrderModel orderEvent = OrderModel.builder()
                             .id((faker.number().numberBetween(0, 5000)))
                             .version(faker.number().numberBetween(0, 5))
@@ -38,13 +38,13 @@ public class OrderRoute extends RouteBuilder {
 
                 .marshal().json(JsonLibrary.Jackson)
                 .log("Body before sending to Kafka ${body}")
-                .to("kafka:order-demo?"
-                        + "brokers=localhost:9092"
+                .to("kafka:{{kafka-topic-name}}?"
+                        + "brokers={{spring.kafka.bootstrap-servers}}"
                         + "&valueSerializer=org.apache.kafka.common.serialization.StringSerializer"
                         + "&keySerializer=org.apache.kafka.common.serialization.StringSerializer");
 
         // Consume data
-        from("kafka:order-demo?brokers=localhost:9092&groupId=my-group")
+        from("kafka:{{kafka-topic-name}}?brokers={{spring.kafka.bootstrap-servers}}&groupId=my-group")
                 .log("got a body ${body}")
                 .unmarshal().json(JsonLibrary.Jackson, OrderModel.class)
                 .to("bean-validator://ValidateModel")
@@ -78,10 +78,11 @@ public class OrderRoute extends RouteBuilder {
                 params.put("description", order.getDescription());
                 params.put("effectiveDate", order.getEffectiveDate());
                 params.put("status", order.getStatus());
+                params.put("rowHash", order.businessFingerprint());
                 exchange.getIn().setBody(params);
             })
-            .to("sql:INSERT INTO [Orders](id, name, description, effective_date, status) " +
-                "VALUES (:#id, :#name, :#description, :#effectiveDate, :#status)")
+            .to("sql:INSERT INTO [Orders](id, name, description, effective_date, status, row_hash) " +
+                "VALUES (:#id, :#name, :#description, :#effectiveDate, :#status, :#rowHash)")
             .log("Inserted new order: ${body}");
 
         from("direct:upsertOrder").autoStartup(true)
@@ -93,19 +94,19 @@ public class OrderRoute extends RouteBuilder {
                     params.put("description", order.getDescription());
                     params.put("effectiveDate", order.getEffectiveDate());
                     params.put("status", order.getStatus());
+                    params.put("rowHash", order.businessFingerprint());
                     exchange.getIn().setBody(params);
                 })
                 .to("sql:MERGE [Orders] AS target " +
                         "USING (SELECT :#id as id, :#name as name, :#description as description, " +
-                        ":#effectiveDate as effective_date, :#status as status) AS source " +
+                        ":#effectiveDate as effective_date, :#status as status, :#rowHash as row_hash) AS source " +
                         "ON target.id = source.id " +
-                        "WHEN MATCHED AND (target.name != source.name OR target.description != source.description OR " +
-                        "target.effective_date != source.effective_date OR target.status != source.status) THEN " +
+                        "WHEN MATCHED AND (target.row_hash IS NULL OR target.row_hash != source.row_hash) THEN " +
                         "UPDATE SET name = source.name, description = source.description, " +
-                        "effective_date = source.effective_date, status = source.status " +
+                        "effective_date = source.effective_date, status = source.status, row_hash = source.row_hash " +
                         "WHEN NOT MATCHED THEN " +
-                        "INSERT (id, name, description, effective_date, status) " +
-                        "VALUES (source.id, source.name, source.description, source.effective_date, source.status);")
+                        "INSERT (id, name, description, effective_date, status, row_hash) " +
+                        "VALUES (source.id, source.name, source.description, source.effective_date, source.status, source.row_hash);")
                 .log("Upsert completed for order ID: ${body}");
     }
 }
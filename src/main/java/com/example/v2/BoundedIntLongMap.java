@@ -0,0 +1,159 @@
+package com.example.v2;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size, primitive int to long map for per-order state kept in memory.
+ * <p>
+ * Entries live in 4-way buckets addressed by a hash of the key; when a bucket is full the
+ * next insert evicts one of its entries round-robin, so memory never grows past the
+ * capacity chosen up front (about 13 bytes per slot). Losing an entry only means the
+ * caller falls back to the database, so eviction is always safe. Buckets are guarded by
+ * striped locks so the map can be shared by concurrent consumer threads.
+ */
+class BoundedIntLongMap {
+
+    private static final int WAYS = 4;
+    private static final int STRIPES = 64;
+
+    private final int[] keys;
+    private final long[] values;
+    private final boolean[] used;
+    private final byte[] victims;
+    private final int bucketMask;
+    private final Object[] locks = new Object[STRIPES];
+    private final AtomicInteger size = new AtomicInteger();
+
+    BoundedIntLongMap(int maxEntries) {
+        int buckets = Integer.highestOneBit(Math.max(1, (maxEntries + WAYS - 1) / WAYS));
+        this.keys = new int[buckets * WAYS];
+        this.values = new long[buckets * WAYS];
+        this.used = new boolean[buckets * WAYS];
+        this.victims = new byte[buckets];
+        this.bucketMask = buckets - 1;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the value stored for the key, or {@code absent} if there is none
+     */
+    long get(int key, long absent) {
+        int bucket = bucket(key);
+        synchronized (lock(bucket)) {
+            int slot = find(bucket, key);
+            return slot < 0 ? absent : values[slot];
+        }
+    }
+
+    void put(int key, long value) {
+        int bucket = bucket(key);
+        synchronized (lock(bucket)) {
+            store(bucket, key, value);
+        }
+    }
+
+    /**
+     * Stores the value unless the key already maps to it.
+     *
+     * @return false if the key was present with the same value
+     */
+    boolean putIfChanged(int key, long value) {
+        int bucket = bucket(key);
+        synchronized (lock(bucket)) {
+            int slot = find(bucket, key);
+            if (slot >= 0 && values[slot] == value) {
+                return false;
+            }
+            store(bucket, key, value);
+            return true;
+        }
+    }
+
+    /**
+     * Stores the value unless the key already maps to a greater one.
+     *
+     * @return false if the key was present with a greater value
+     */
+    boolean putIfNotLower(int key, long value) {
+        int bucket = bucket(key);
+        synchronized (lock(bucket)) {
+            int slot = find(bucket, key);
+            if (slot >= 0 && values[slot] > value) {
+                return false;
+            }
+            store(bucket, key, value);
+            return true;
+        }
+    }
+
+    boolean remove(int key) {
+        int bucket = bucket(key);
+        synchronized (lock(bucket)) {
+            int slot = find(bucket, key);
+            if (slot < 0) {
+                return false;
+            }
+            used[slot] = false;
+            size.decrementAndGet();
+            return true;
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    private void store(int bucket, int key, long value) {
+        int slot = find(bucket, key);
+        if (slot < 0) {
+            slot = freeSlot(bucket);
+            if (slot < 0) {
+                // Bucket full: evict round-robin, the size stays the same
+                int victim = victims[bucket];
+                victims[bucket] = (byte) ((victim + 1) % WAYS);
+                slot = bucket * WAYS + victim;
+            } else {
+                used[slot] = true;
+                size.incrementAndGet();
+            }
+            keys[slot] = key;
+        }
+        values[slot] = value;
+    }
+
+    private int find(int bucket, int key) {
+        int base = bucket * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            if (used[i] && keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int freeSlot(int bucket) {
+        int base = bucket * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            if (!used[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int bucket(int key) {
+        // Spread sequential order ids over the buckets
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & bucketMask;
+    }
+
+    private Object lock(int bucket) {
+        return locks[bucket & (STRIPES - 1)];
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.v2;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the lag of the order consumer group per partition as the {@code orders.consumer.lag}
+ * gauge: the log end offset minus the committed offset, refreshed through the Kafka admin API.
+ */
+@Slf4j
+@Component
+public class ConsumerLagMonitor {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<TopicPartition, AtomicLong> lags = new ConcurrentHashMap<>();
+
+    @Value("${kafka-topic-name}")
+    private String topicName;
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String brokerUrl;
+    @Value("${order.consumer.group-id:my-group}")
+    private String groupId;
+
+    private Admin admin;
+
+    public ConsumerLagMonitor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Refreshes the lag gauges; failures are logged and the previous values kept
+     */
+    public void refresh() {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = admin().listConsumerGroupOffsets(groupId)
+                    .partitionsToOffsetAndMetadata()
+                    .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+            Map<TopicPartition, OffsetSpec> request = new HashMap<>();
+            committed.forEach((partition, offset) -> {
+                if (offset != null && partition.topic().equals(topicName)) {
+                    request.put(partition, OffsetSpec.latest());
+                }
+            });
+            if (request.isEmpty()) {
+                return;
+            }
+
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> ends = admin().listOffsets(request)
+                    .all()
+                    .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            ends.forEach((partition, end) ->
+                    lag(partition).set(Math.max(0, end.offset() - committed.get(partition).offset())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Failed to refresh consumer lag of group {}: {}", groupId, e.getMessage());
+        }
+    }
+
+    /**
+     * Last known lag of the partition, -1 if not known yet
+     */
+    public long lag(String topic, int partition) {
+        AtomicLong lag = lags.get(new TopicPartition(topic, partition));
+        return lag == null ? -1 : lag.get();
+    }
+
+    /**
+     * Last known lag summed over the partitions of the order topic, -1 if not known yet
+     */
+    public long totalLag() {
+        if (lags.isEmpty()) {
+            return -1;
+        }
+        long total = 0;
+        for (AtomicLong lag : lags.values()) {
+            total += lag.get();
+        }
+        return total;
+    }
+
+    private AtomicLong lag(TopicPartition partition) {
+        return lags.computeIfAbsent(partition, p -> {
+            AtomicLong lag = new AtomicLong();
+            Gauge.builder("orders.consumer.lag", lag, AtomicLong::get)
+                    .description("Records of the order topic not yet committed by the consumer group")
+                    .tag("topic", p.topic())
+                    .tag("partition", String.valueOf(p.partition()))
+                    .register(meterRegistry);
+            return lag;
+        });
+    }
+
+    private synchronized Admin admin() {
+        if (admin == null) {
+            Map<String, Object> config = new HashMap<>();
+            config.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, brokerUrl);
+            config.put(AdminClientConfig.CLIENT_ID_CONFIG, "order-lag-monitor");
+            admin = Admin.create(config);
+        }
+        return admin;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (admin != null) {
+            admin.close(Duration.ofSeconds(5));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.v2;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.kafka.consumer.KafkaManualCommit;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Commits Kafka offsets only once every record below them has finished its database write.
+ * <p>
+ * Records are registered in offset order on the consumer thread and may complete in any order
+ * on other threads (worker lanes, batches). Per partition the tracker commits the highest
+ * completed offset below the oldest record still in flight - the contiguous low watermark - so
+ * asynchronous processing never commits past a record that could still be lost.
+ */
+@Component
+public class OffsetCommitTracker {
+
+    // Exchange property carrying the ticket of the Kafka record being processed
+    public static final String TICKET = "offsetTicket";
+
+    private final ConcurrentMap<TopicPartition, PartitionState> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the Kafka record behind the exchange, a no-op for exchanges not coming from Kafka
+     */
+    public void register(Exchange exchange) {
+        String topic = exchange.getIn().getHeader(KafkaConstants.TOPIC, String.class);
+        Integer partition = exchange.getIn().getHeader(KafkaConstants.PARTITION, Integer.class);
+        Long offset = exchange.getIn().getHeader(KafkaConstants.OFFSET, Long.class);
+        KafkaManualCommit manualCommit = exchange.getIn().getHeader(KafkaConstants.MANUAL_COMMIT, KafkaManualCommit.class);
+        if (topic == null || partition == null || offset == null || manualCommit == null) {
+            return;
+        }
+        exchange.setProperty(TICKET, register(new TopicPartition(topic, partition), offset, manualCommit::commit));
+    }
+
+    public Ticket register(TopicPartition partition, long offset, Runnable commit) {
+        Ticket ticket = new Ticket(partition, offset, commit);
+        partitions.computeIfAbsent(partition, p -> new PartitionState()).register(offset);
+        return ticket;
+    }
+
+    /**
+     * Marks the record behind the exchange as done; safe to call more than once
+     */
+    public void complete(Exchange exchange) {
+        Ticket ticket = exchange.getProperty(TICKET, Ticket.class);
+        if (ticket != null) {
+            complete(ticket);
+        }
+    }
+
+    public void complete(Ticket ticket) {
+        PartitionState state = partitions.get(ticket.getPartition());
+        if (state == null) {
+            return;
+        }
+        state.complete(ticket);
+    }
+
+    /**
+     * Records registered but not completed yet, across all partitions
+     */
+    public int inFlightCount() {
+        return partitions.values().stream().mapToInt(PartitionState::inFlightCount).sum();
+    }
+
+    /**
+     * Last committed offset of the partition, -1 if nothing was committed yet
+     */
+    public long committedOffset(TopicPartition partition) {
+        PartitionState state = partitions.get(partition);
+        return state == null ? -1 : state.committedOffset();
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Ticket {
+        private final TopicPartition partition;
+        private final long offset;
+        private final Runnable commit;
+    }
+
+    private static final class PartitionState {
+
+        private final TreeSet<Long> inFlight = new TreeSet<>();
+        private final TreeMap<Long, Ticket> completed = new TreeMap<>();
+        private long committed = -1;
+
+        synchronized void register(long offset) {
+            if (offset <= committed) {
+                // The partition was rewound (rebalance or seek), earlier state no longer applies
+                inFlight.clear();
+                completed.clear();
+                committed = offset - 1;
+            }
+            inFlight.add(offset);
+        }
+
+        /**
+         * Commits under the partition lock so commits of one partition never overtake each other
+         */
+        synchronized void complete(Ticket ticket) {
+            if (!inFlight.remove(ticket.getOffset())) {
+                return;
+            }
+            completed.put(ticket.getOffset(), ticket);
+
+            long oldestInFlight = inFlight.isEmpty() ? Long.MAX_VALUE : inFlight.first();
+            NavigableMap<Long, Ticket> ready = completed.headMap(oldestInFlight, false);
+            if (ready.isEmpty()) {
+                return;
+            }
+            Map.Entry<Long, Ticket> watermark = ready.lastEntry();
+            ready.clear();
+            committed = watermark.getKey();
+            watermark.getValue().getCommit().run();
+        }
+
+        synchronized int inFlightCount() {
+            return inFlight.size();
+        }
+
+        synchronized long committedOffset() {
+            return committed;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.v2;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ServiceStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches the order intake to what the database keeps up with, instead of letting exchanges
+ * queue for pool connections until they time out.
+ * <p>
+ * Every interval it samples the Hikari threads waiting for a connection, over the pools of all
+ * {@link OrderShards}, and the mean upsert latency since the last sample, then
+ * <ul>
+ *     <li>sizes upsert batches AIMD-style: halved while the database is behind, grown by a step
+ *     while it keeps up;</li>
+ *     <li>suspends the Kafka consumer route that owns the order topic once connection waits reach
+ *     {@code pause-pending-threads} or latency exceeds twice the target, and resumes it once no
+ *     thread waits and latency is back under the target.</li>
+ * </ul>
+ * When {@link OrderCatchUpController} hands the topic to the other consumer during a pause, the pause
+ * moves to the consumer that now owns the topic; the stopped one is never resumed.
+ */
+@Slf4j
+@Component
+public class OrderBackpressureController {
+
+    private final CamelContext camelContext;
+    private final OrderShards orderShards;
+    private final OrderMetrics orderMetrics;
+    private final OrderCatchUpController orderCatchUp;
+
+    @Value("${order.backpressure.enabled:true}")
+    private boolean enabled;
+    @Value("${order.backpressure.target-latency-ms:50}")
+    private long targetLatencyMs;
+    @Value("${order.backpressure.target-batch-latency-ms:1000}")
+    private long targetBatchLatencyMs;
+    @Value("${order.backpressure.pause-pending-threads:5}")
+    private int pausePendingThreads;
+    @Value("${order.backpressure.min-batch-size:50}")
+    private int minBatchSize;
+    @Value("${order.backpressure.batch-size-step:50}")
+    private int batchSizeStep;
+    @Value("${order.upsert.batch.max-size:500}")
+    private int maxBatchSize;
+
+    private volatile int batchSize = -1;
+    private volatile boolean paused;
+    private volatile String pausedRoute;
+    private volatile int pendingThreads;
+    private volatile double latencyMs;
+    private volatile double batchLatencyMs;
+    private final Sample upsertSample = new Sample();
+    private final Sample batchSample = new Sample();
+
+    public OrderBackpressureController(CamelContext camelContext,
+                                       OrderShards orderShards,
+                                       OrderMetrics orderMetrics,
+                                       OrderCatchUpController orderCatchUp,
+                                       MeterRegistry meterRegistry) {
+        this.camelContext = camelContext;
+        this.orderShards = orderShards;
+        this.orderMetrics = orderMetrics;
+        this.orderCatchUp = orderCatchUp;
+        Gauge.builder("orders.backpressure.paused", this, controller -> controller.paused ? 1 : 0)
+                .description("1 while the order consumer is suspended for the database to catch up")
+                .register(meterRegistry);
+        Gauge.builder("orders.backpressure.batch-size", this, OrderBackpressureController::batchSize)
+                .description("Current upsert batch size limit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Upsert batch size limit, read by the batch aggregator for every order
+     */
+    public int batchSize() {
+        int size = batchSize;
+        return size < 0 ? maxBatchSize : size;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Takes a sample and adjusts the batch size and the consumer; called on a timer
+     */
+    public synchronized void evaluate() {
+        if (!enabled) {
+            return;
+        }
+        pendingThreads = threadsAwaitingConnection();
+        latencyMs = upsertSample.meanMs(orderMetrics.stage("upsert"));
+        batchLatencyMs = batchSample.meanMs(orderMetrics.stage("batch-upsert"));
+
+        boolean behind = pendingThreads > 0 || latencyMs > targetLatencyMs || batchLatencyMs > targetBatchLatencyMs;
+        int size = batchSize();
+        batchSize = behind
+                ? Math.max(minBatchSize, size / 2)
+                : Math.min(maxBatchSize, size + batchSizeStep);
+
+        boolean overloaded = pendingThreads >= pausePendingThreads
+                || latencyMs > 2 * targetLatencyMs
+                || batchLatencyMs > 2 * targetBatchLatencyMs;
+        if (paused && !activeRoute().equals(pausedRoute)) {
+            movePause();
+        }
+        if (!paused && overloaded) {
+            pause();
+        } else if (paused && pendingThreads == 0 && latencyMs <= targetLatencyMs && batchLatencyMs <= targetBatchLatencyMs) {
+            resume();
+        }
+    }
+
+    /**
+     * State for the actuator endpoint
+     */
+    public Map<String, Object> state() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", enabled);
+        state.put("paused", paused);
+        state.put("pausedRoute", pausedRoute);
+        state.put("batchSize", batchSize());
+        state.put("pendingThreads", pendingThreads);
+        state.put("upsertLatencyMs", latencyMs);
+        state.put("batchUpsertLatencyMs", batchLatencyMs);
+        state.put("targetLatencyMs", targetLatencyMs);
+        state.put("targetBatchLatencyMs", targetBatchLatencyMs);
+        return state;
+    }
+
+    private void pause() {
+        String route = activeRoute();
+        try {
+            if (camelContext.getRouteController().getRouteStatus(route) != ServiceStatus.Started) {
+                return;
+            }
+            camelContext.getRouteController().suspendRoute(route);
+            paused = true;
+            pausedRoute = route;
+            log.warn("Database behind ({} threads waiting for a connection, upsert {} ms, batch {} ms), suspended {}",
+                    pendingThreads, Math.round(latencyMs), Math.round(batchLatencyMs), route);
+        } catch (Exception e) {
+            log.warn("Failed to suspend {}: {}", route, e.getMessage());
+        }
+    }
+
+    private void resume() {
+        String route = pausedRoute;
+        try {
+            // Left alone if the catch-up controller stopped it in the meantime
+            if (camelContext.getRouteController().getRouteStatus(route) == ServiceStatus.Suspended) {
+                camelContext.getRouteController().resumeRoute(route);
+            }
+            paused = false;
+            pausedRoute = null;
+            log.info("Database caught up, resumed {}", route);
+        } catch (Exception e) {
+            log.warn("Failed to resume {}: {}", route, e.getMessage());
+        }
+    }
+
+    /**
+     * The catch-up controller switched consumers during the pause: it stopped the suspended route and
+     * started the other one, which is suspended in its place
+     */
+    private void movePause() {
+        String stopped = pausedRoute;
+        paused = false;
+        pausedRoute = null;
+        pause();
+        if (paused) {
+            log.info("Order topic switched from {} while paused, pause moved to {}", stopped, pausedRoute);
+        }
+    }
+
+    /**
+     * The Kafka consumer route that currently owns the order topic
+     */
+    private String activeRoute() {
+        return orderCatchUp.isActive() ? OrderCatchUpController.CATCH_UP_ROUTE : OrderCatchUpController.STREAMING_ROUTE;
+    }
+
+    /**
+     * Threads waiting for a connection, summed over the pools of every shard
+     */
+    private int threadsAwaitingConnection() {
+        int waiting = 0;
+        for (DataSource dataSource : orderShards.dataSources()) {
+            HikariPoolMXBean pool = pool(dataSource);
+            if (pool != null) {
+                waiting += pool.getThreadsAwaitingConnection();
+            }
+        }
+        return waiting;
+    }
+
+    private HikariPoolMXBean pool(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                // Null until the pool has started
+                return dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+            }
+        } catch (Exception e) {
+            log.debug("No Hikari pool to watch: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Mean latency of a timer since the previous sample, 0 when nothing was recorded in between
+     */
+    private static final class Sample {
+
+        private long count;
+        private double totalMs;
+
+        double meanMs(Timer timer) {
+            long newCount = timer.count();
+            double newTotalMs = timer.totalTime(TimeUnit.MILLISECONDS);
+            double mean = newCount > count ? (newTotalMs - totalMs) / (newCount - count) : 0;
+            count = newCount;
+            totalMs = newTotalMs;
+            return mean;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.v2;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint ({@code /actuator/orderbackpressure}) reporting the state of the
+ * {@link OrderBackpressureController}
+ */
+@Component
+@Endpoint(id = "orderbackpressure")
+public class OrderBackpressureEndpoint {
+
+    private final OrderBackpressureController controller;
+
+    public OrderBackpressureEndpoint(OrderBackpressureController controller) {
+        this.controller = controller;
+    }
+
+    @ReadOperation
+    public Map<String, Object> state() {
+        return controller.state();
+    }
+}
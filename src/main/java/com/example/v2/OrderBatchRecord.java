@@ -0,0 +1,60 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+
+/**
+ * An order of an aggregated batch together with the Kafka headers its retry depends on: the retry
+ * attempt the record is on and the topic it was consumed from. The batch exchange only keeps the
+ * headers of one record, so each order carries its own back to the exchange it is replayed on.
+ */
+final class OrderBatchRecord {
+
+    private final OrderModel order;
+    private final Object attempt;
+    private final String topic;
+
+    private OrderBatchRecord(OrderModel order, Object attempt, String topic) {
+        this.order = order;
+        this.attempt = attempt;
+        this.topic = topic;
+    }
+
+    /**
+     * The decoded order of a record exchange with its retry headers
+     */
+    static OrderBatchRecord of(Exchange exchange) {
+        return new OrderBatchRecord(exchange.getIn().getBody(OrderModel.class),
+                exchange.getIn().getHeader(OrderRetryPolicy.ATTEMPT_HEADER),
+                exchange.getIn().getHeader(KafkaConstants.TOPIC, String.class));
+    }
+
+    OrderModel order() {
+        return order;
+    }
+
+    /**
+     * Turns a split exchange of the batch holding this record back into the record's exchange
+     */
+    void restore(Exchange exchange) {
+        exchange.getIn().setBody(order);
+        setOrRemove(exchange, OrderRetryPolicy.ATTEMPT_HEADER, attempt);
+        setOrRemove(exchange, KafkaConstants.TOPIC, topic);
+    }
+
+    /**
+     * Restores the record a split exchange of {@link OrderRouteV2#BATCH_RECORDS} holds as its body
+     */
+    static void restoreBody(Exchange exchange) {
+        exchange.getIn().getBody(OrderBatchRecord.class).restore(exchange);
+    }
+
+    private static void setOrRemove(Exchange exchange, String name, Object value) {
+        if (value == null) {
+            exchange.getIn().removeHeader(name);
+        } else {
+            exchange.getIn().setHeader(name, value);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.DataFormat;
+import org.apache.camel.spi.DataFormatName;
+import org.apache.camel.support.service.ServiceSupport;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Compact binary wire format for {@link OrderModel}, an alternative to JSON on the order topic.
+ * <p>
+ * Layout (format version 1): a format-version byte, zigzag varint id and version, the
+ * {@link StatusEnum} ordinal + 1 (0 = null), the effective date as a presence byte followed by
+ * zigzag varint epoch seconds, nanos and offset seconds, then name and description as UTF-8
+ * prefixed with a varint of length + 1 (0 = null). New fields must go behind a new format version,
+ * and new {@link StatusEnum} constants may only be appended.
+ * <p>
+ * The effective date is decoded in UTC, like the JSON decoders do, so an order stores the same
+ * effective date whichever wire format it came in.
+ */
+@Component
+public class OrderBinaryDataFormat extends ServiceSupport implements DataFormat, DataFormatName {
+
+    static final byte FORMAT_VERSION = 1;
+
+    private static final StatusEnum[] STATUSES = StatusEnum.values();
+
+    @Override
+    public String getDataFormatName() {
+        return "orderBinary";
+    }
+
+    @Override
+    public void marshal(Exchange exchange, Object graph, OutputStream stream) throws Exception {
+        stream.write(encode((OrderModel) graph));
+    }
+
+    @Override
+    public Object unmarshal(Exchange exchange, InputStream stream) throws Exception {
+        Object body = exchange.getMessage().getBody();
+        return decode(body instanceof byte[] ? (byte[]) body : stream.readAllBytes());
+    }
+
+    public byte[] encode(OrderModel order) {
+        byte[] name = utf8(order.getName());
+        byte[] description = utf8(order.getDescription());
+
+        Writer out = new Writer(32 + length(name) + length(description));
+        out.writeByte(FORMAT_VERSION);
+        out.writeVarLong(zigzag(order.getId()));
+        out.writeVarLong(zigzag(order.getVersion()));
+        out.writeByte(order.getStatus() == null ? 0 : order.getStatus().ordinal() + 1);
+
+        OffsetDateTime effectiveDate = order.getEffectiveDate();
+        if (effectiveDate == null) {
+            out.writeByte(0);
+        } else {
+            out.writeByte(1);
+            out.writeVarLong(zigzag(effectiveDate.toEpochSecond()));
+            out.writeVarLong(effectiveDate.getNano());
+            out.writeVarLong(zigzag(effectiveDate.getOffset().getTotalSeconds()));
+        }
+
+        out.writeBytes(name);
+        out.writeBytes(description);
+        return out.toByteArray();
+    }
+
+    public OrderModel decode(byte[] payload) {
+        Reader in = new Reader(payload);
+        byte formatVersion = in.readByte();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported order wire format version " + formatVersion);
+        }
+
+        OrderModel order = new OrderModel();
+        order.setId((int) unzigzag(in.readVarLong()));
+        order.setVersion((int) unzigzag(in.readVarLong()));
+        int status = in.readByte();
+        if (status < 0 || status > STATUSES.length) {
+            throw new IllegalArgumentException("Unknown order status " + status + " in order payload");
+        }
+        order.setStatus(status == 0 ? null : STATUSES[status - 1]);
+
+        if (in.readByte() != 0) {
+            long epochSecond = unzigzag(in.readVarLong());
+            int nano = (int) in.readVarLong();
+            // The writer's offset is skipped, the JSON decoders adjust dates to UTC as well
+            unzigzag(in.readVarLong());
+            order.setEffectiveDate(OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nano), ZoneOffset.UTC));
+        }
+
+        order.setName(in.readString());
+        order.setDescription(in.readString());
+        return order;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+
+        private byte[] buffer;
+        private int position;
+
+        Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeBytes(byte[] value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            writeVarLong(value.length + 1L);
+            ensure(value.length);
+            System.arraycopy(value, 0, buffer, position, value.length);
+            position += value.length;
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[position];
+            System.arraycopy(buffer, 0, result, 0, position);
+            return result;
+        }
+
+        private void ensure(int bytes) {
+            if (position + bytes > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, position + bytes)];
+                System.arraycopy(buffer, 0, grown, 0, position);
+                buffer = grown;
+            }
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Truncated order payload");
+            }
+            return buffer[position++];
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in order payload");
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            int size = (int) (length - 1);
+            if (size < 0 || position + size > buffer.length) {
+                throw new IllegalArgumentException("Truncated order payload");
+            }
+            String value = new String(buffer, position, size, StandardCharsets.UTF_8);
+            position += size;
+            return value;
+        }
+    }
+}
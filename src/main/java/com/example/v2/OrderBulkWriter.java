@@ -0,0 +1,294 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Bulk write engine for orders: loads a chunk into a staging table and applies it
+ * to [Orders] with one set-based MERGE.
+ * <p>
+ * On SQL Server the chunk goes through the bulk copy API into a session temp table,
+ * anywhere else (H2 for local testing) it falls back to multi-row INSERTs into a
+ * local temporary table.
+ */
+@Slf4j
+@Component
+public class OrderBulkWriter {
+
+    private static final String SQL_SERVER_STAGING = "#OrdersStaging";
+    private static final String H2_STAGING = "orders_staging";
+
+    private static final String MERGE_FROM_STAGING_SQL =
+            "MERGE INTO [Orders] AS target " +
+            "USING %s AS source " +
+            "ON target.id = source.id " +
+            "WHEN MATCHED AND (" +
+                "target.version IS NULL OR " +
+                "source.version > target.version OR " +
+                "(source.version = target.version AND (target.row_hash IS NULL OR target.row_hash != source.row_hash))" +
+            ") THEN " +
+                "UPDATE SET " +
+                    "name = source.name, " +
+                    "description = source.description, " +
+                    "effective_date = source.effective_date, " +
+                    "status = source.status, " +
+                    "row_hash = source.row_hash, " +
+                    "version = source.version " +
+            "WHEN NOT MATCHED THEN " +
+                "INSERT (id, name, description, effective_date, status, row_hash, version) " +
+                "VALUES (source.id, source.name, source.description, source.effective_date, source.status, " +
+                        "source.row_hash, source.version);";
+
+    // Reports each row the MERGE wrote, with the business fields it replaced
+    private static final String MERGE_OUTPUT_FROM_STAGING_SQL =
+            MERGE_FROM_STAGING_SQL.substring(0, MERGE_FROM_STAGING_SQL.length() - 1) +
+            " OUTPUT $action, deleted.name, deleted.description, deleted.effective_date, deleted.status, inserted.id;";
+
+    private static final String STAGING_COLUMNS =
+            "(id INT NOT NULL, name NVARCHAR(255), description NVARCHAR(1000), effective_date DATE, status NVARCHAR(50), " +
+            "row_hash BIGINT, version INT)";
+
+    private final DataSource dataSource;
+    private final int insertRows;
+
+    private volatile Boolean sqlServer;
+
+    public OrderBulkWriter(DataSource dataSource,
+                           @Value("${order.upsert.bulk.insert-rows:200}") int insertRows) {
+        this.dataSource = dataSource;
+        this.insertRows = insertRows;
+    }
+
+    /**
+     * Writes a chunk of orders, returning the number of rows the MERGE touched
+     */
+    public int write(List<OrderModel> orders) throws SQLException {
+        return write(orders, null);
+    }
+
+    /**
+     * Writes a chunk of orders, handing every row the MERGE wrote to {@code changes} when given.
+     * Only SQL Server reports the written rows; elsewhere {@code changes} is never called.
+     */
+    public int write(List<OrderModel> orders, Consumer<OrderChange> changes) throws SQLException {
+        Map<Integer, OrderModel> chunk = latestPerId(orders);
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                int merged = isSqlServer(conn)
+                        ? writeSqlServer(conn, chunk, changes)
+                        : writeGeneric(conn, chunk.values());
+                conn.commit();
+                log.debug("Bulk merged {} of {} staged orders", merged, chunk.size());
+                return merged;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private int writeSqlServer(Connection conn, Map<Integer, OrderModel> chunk, Consumer<OrderChange> changes)
+            throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("IF OBJECT_ID('tempdb.." + SQL_SERVER_STAGING + "') IS NOT NULL DROP TABLE " + SQL_SERVER_STAGING);
+            stmt.execute("CREATE TABLE " + SQL_SERVER_STAGING + " " + STAGING_COLUMNS);
+
+            int merged;
+            try {
+                SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+                options.setTableLock(true);
+                options.setBatchSize(chunk.size());
+
+                try (SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(conn.unwrap(SQLServerConnection.class))) {
+                    bulkCopy.setBulkCopyOptions(options);
+                    bulkCopy.setDestinationTableName(SQL_SERVER_STAGING);
+                    bulkCopy.writeToServer(new OrderBulkData(chunk.values()));
+                }
+                merged = mergeStaging(stmt, chunk, changes);
+            } catch (SQLException | RuntimeException e) {
+                // The drop fails too once the failure doomed the transaction, it must not replace the cause
+                try {
+                    stmt.execute("DROP TABLE " + SQL_SERVER_STAGING);
+                } catch (SQLException dropFailure) {
+                    e.addSuppressed(dropFailure);
+                }
+                throw e;
+            }
+            stmt.execute("DROP TABLE " + SQL_SERVER_STAGING);
+            return merged;
+        }
+    }
+
+    private static int mergeStaging(Statement stmt, Map<Integer, OrderModel> chunk, Consumer<OrderChange> changes)
+            throws SQLException {
+        if (changes == null) {
+            return stmt.executeUpdate(String.format(MERGE_FROM_STAGING_SQL, SQL_SERVER_STAGING));
+        }
+        int merged = 0;
+        try (ResultSet rs = stmt.executeQuery(String.format(MERGE_OUTPUT_FROM_STAGING_SQL, SQL_SERVER_STAGING))) {
+            while (rs.next()) {
+                changes.accept(OrderUpsertBinder.change(rs, chunk.get(rs.getInt(6))));
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+    private int writeGeneric(Connection conn, Collection<OrderModel> chunk) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS " + H2_STAGING + " " + STAGING_COLUMNS);
+            stmt.execute("DELETE FROM " + H2_STAGING);
+        }
+
+        List<OrderModel> rows = new ArrayList<>(chunk);
+        for (int from = 0; from < rows.size(); from += insertRows) {
+            List<OrderModel> slice = rows.subList(from, Math.min(from + insertRows, rows.size()));
+            try (PreparedStatement ps = conn.prepareStatement(multiRowInsert(slice.size()))) {
+                int index = 1;
+                for (OrderModel order : slice) {
+                    ps.setInt(index++, order.getId());
+                    ps.setString(index++, order.getName());
+                    ps.setString(index++, order.getDescription());
+                    ps.setObject(index++, sqlDate(order), Types.DATE);
+                    ps.setString(index++, status(order));
+                    ps.setLong(index++, order.businessFingerprint());
+                    ps.setInt(index++, order.getVersion());
+                }
+                ps.executeUpdate();
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            return stmt.executeUpdate(String.format(MERGE_FROM_STAGING_SQL, H2_STAGING));
+        }
+    }
+
+    private static String multiRowInsert(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO " + H2_STAGING + " (id, name, description, effective_date, status, row_hash, version) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * A set-based MERGE may not touch the same target row twice, so only the highest
+     * version per id in the chunk is staged (the last one on equal versions)
+     */
+    private static Map<Integer, OrderModel> latestPerId(List<OrderModel> orders) {
+        Map<Integer, OrderModel> latest = new LinkedHashMap<>(orders.size() * 2);
+        for (OrderModel order : orders) {
+            latest.merge(order.getId(), order,
+                    (current, candidate) -> candidate.getVersion() >= current.getVersion() ? candidate : current);
+        }
+        return latest;
+    }
+
+    private static Date sqlDate(OrderModel order) {
+        return order.getEffectiveDate() == null ? null : Date.valueOf(order.getEffectiveDate().toLocalDate());
+    }
+
+    private static String status(OrderModel order) {
+        return order.getStatus() == null ? null : order.getStatus().name();
+    }
+
+    private boolean isSqlServer(Connection conn) throws SQLException {
+        Boolean detected = sqlServer;
+        if (detected == null) {
+            detected = conn.getMetaData().getDatabaseProductName().contains("SQL Server");
+            sqlServer = detected;
+        }
+        return detected;
+    }
+
+    /**
+     * Feeds a chunk of orders to the bulk copy API without an intermediate file or result set
+     */
+    private static final class OrderBulkData implements ISQLServerBulkData {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final String[] COLUMNS = {"id", "name", "description", "effective_date", "status", "row_hash", "version"};
+        private static final int[] TYPES = {Types.INTEGER, Types.NVARCHAR, Types.NVARCHAR, Types.DATE, Types.NVARCHAR, Types.BIGINT, Types.INTEGER};
+        private static final int[] PRECISIONS = {10, 255, 1000, 10, 50, 19, 10};
+
+        private final Iterator<OrderModel> rows;
+        private OrderModel current;
+
+        OrderBulkData(Collection<OrderModel> rows) {
+            this.rows = rows.iterator();
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            return new LinkedHashSet<>(Arrays.asList(1, 2, 3, 4, 5, 6, 7));
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column - 1];
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            return TYPES[column - 1];
+        }
+
+        @Override
+        public int getPrecision(int column) {
+            return PRECISIONS[column - 1];
+        }
+
+        @Override
+        public int getScale(int column) {
+            return 0;
+        }
+
+        @Override
+        public Object[] getRowData() {
+            return new Object[]{
+                    current.getId(),
+                    current.getName(),
+                    current.getDescription(),
+                    sqlDate(current),
+                    status(current),
+                    current.businessFingerprint(),
+                    current.getVersion()
+            };
+        }
+
+        @Override
+        public boolean next() {
+            if (!rows.hasNext()) {
+                return false;
+            }
+            current = rows.next();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import org.apache.camel.AggregationStrategy;
+import org.apache.camel.Exchange;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregation strategy of the catch-up consumer: a batch keeps only the latest state per order
+ * (highest version, the later event on equal versions) plus the offset tickets of every record,
+ * so a replay holds one order per id in memory however many events it reads.
+ * <p>
+ * On completion the batch is laid out like the one of {@code upsertOrderBatch}
+ * ({@link OrderRouteV2#BATCH_ORDERS}, {@link OrderRouteV2#BATCH_RECORDS}, {@link OrderRouteV2#BATCH_TICKETS}), so it is written
+ * and acknowledged by the same routes.
+ */
+class OrderCatchUpAggregation implements AggregationStrategy {
+
+    // Exchange property holding the latest order per id while the batch is collected
+    private static final String LATEST_ORDERS = "catchUpLatestOrders";
+
+    private final OrderMetrics orderMetrics;
+
+    OrderCatchUpAggregation(OrderMetrics orderMetrics) {
+        this.orderMetrics = orderMetrics;
+    }
+
+    @Override
+    public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+        Exchange batch = oldExchange;
+        if (batch == null) {
+            batch = newExchange;
+            batch.setProperty(LATEST_ORDERS, new LinkedHashMap<Integer, OrderBatchRecord>());
+            batch.setProperty(OrderRouteV2.BATCH_TICKETS, new ArrayList<OffsetCommitTracker.Ticket>());
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<Integer, OrderBatchRecord> latest = batch.getProperty(LATEST_ORDERS, Map.class);
+        OrderBatchRecord record = OrderBatchRecord.of(newExchange);
+        OrderModel order = record.order();
+        OrderBatchRecord previous = latest.get(order.getId());
+        if (previous == null || order.getVersion() >= previous.order().getVersion()) {
+            latest.put(order.getId(), record);
+        }
+        if (previous != null) {
+            orderMetrics.count(UpsertOutcome.COALESCED);
+        }
+
+        OffsetCommitTracker.Ticket ticket = newExchange.getProperty(OffsetCommitTracker.TICKET, OffsetCommitTracker.Ticket.class);
+        if (ticket != null) {
+            @SuppressWarnings("unchecked")
+            List<OffsetCommitTracker.Ticket> tickets = batch.getProperty(OrderRouteV2.BATCH_TICKETS, List.class);
+            tickets.add(ticket);
+        }
+        return batch;
+    }
+
+    @Override
+    public void onCompletion(Exchange exchange) {
+        @SuppressWarnings("unchecked")
+        Map<Integer, OrderBatchRecord> latest = exchange.getProperty(LATEST_ORDERS, Map.class);
+        exchange.removeProperty(LATEST_ORDERS);
+        List<OrderBatchRecord> records = new ArrayList<>(latest.values());
+        List<OrderModel> orders = new ArrayList<>(records.size());
+        for (OrderBatchRecord record : records) {
+            orders.add(record.order());
+        }
+        exchange.setProperty(OrderRouteV2.BATCH_ORDERS, orders);
+        exchange.setProperty(OrderRouteV2.BATCH_RECORDS, records);
+        exchange.setProperty("batchSize", orders.size());
+        // The batch must not complete the ticket it inherited from its first record on its own
+        exchange.removeProperty(OffsetCommitTracker.TICKET);
+        exchange.getIn().setBody(orders);
+    }
+}
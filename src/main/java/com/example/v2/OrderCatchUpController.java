@@ -0,0 +1,131 @@
+package com.example.v2;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.camel.CamelContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Switches the order topic between the streaming consumer and the catch-up consumer of
+ * {@link OrderRouteV2}.
+ * <p>
+ * Catch-up reads large polls, keeps the latest state per order and writes through the bulk
+ * staging engine; it is entered when the consumer group lag reaches {@code enter-lag} (mode
+ * {@code auto}) or from startup (mode {@code on}), and left for per-record streaming once the
+ * lag is down to {@code exit-lag}. Both consumers share the group, so only one runs at a time:
+ * the running one is stopped, which completes its in-flight batch, before the other starts.
+ */
+@Slf4j
+@Component
+public class OrderCatchUpController {
+
+    static final String STREAMING_ROUTE = "orderConsumerV2";
+    static final String CATCH_UP_ROUTE = "orderCatchUpV2";
+
+    private final CamelContext camelContext;
+    private final ConsumerLagMonitor consumerLagMonitor;
+    private final Counter replayed;
+
+    @Value("${order.catch-up.mode:auto}")
+    private String mode;
+    @Value("${order.catch-up.enter-lag:100000}")
+    private long enterLag;
+    @Value("${order.catch-up.exit-lag:1000}")
+    private long exitLag;
+
+    private volatile boolean active;
+    private volatile double rate;
+    private long lastCount;
+    private long lastNanos;
+
+    public OrderCatchUpController(CamelContext camelContext, ConsumerLagMonitor consumerLagMonitor, MeterRegistry meterRegistry) {
+        this.camelContext = camelContext;
+        this.consumerLagMonitor = consumerLagMonitor;
+        this.replayed = Counter.builder("orders.catch-up.events")
+                .description("Order events read by the catch-up consumer")
+                .register(meterRegistry);
+        Gauge.builder("orders.catch-up.active", this, controller -> controller.active ? 1 : 0)
+                .description("1 while the catch-up consumer owns the order topic")
+                .register(meterRegistry);
+        Gauge.builder("orders.catch-up.rate", this, controller -> controller.rate)
+                .description("Order events replayed per second by the catch-up consumer")
+                .register(meterRegistry);
+    }
+
+    /**
+     * True unless catch-up is switched off, the catch-up route is only built if it can be used
+     */
+    public boolean isEnabled() {
+        return !"off".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Catch-up owns the topic from startup, instead of the streaming consumer
+     */
+    public boolean startsInCatchUp() {
+        return "on".equalsIgnoreCase(mode);
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Counts an event read by the catch-up consumer
+     */
+    public void replayed() {
+        if (!active) {
+            // Started from route autoStartup, before the first evaluation
+            active = startsInCatchUp();
+        }
+        replayed.increment();
+    }
+
+    /**
+     * Enters or leaves catch-up against the last known lag and reports the replay progress;
+     * called after every lag refresh
+     */
+    public synchronized void evaluate() {
+        if (!isEnabled()) {
+            return;
+        }
+        long lag = consumerLagMonitor.totalLag();
+        if (!active && lag >= enterLag) {
+            log.info("Consumer lag {} reached {}, switching the order topic to catch-up", lag, enterLag);
+            switchTo(CATCH_UP_ROUTE, STREAMING_ROUTE, true);
+        } else if (active && lag >= 0 && lag <= exitLag) {
+            log.info("Consumer lag {} is down to {}, switching the order topic back to streaming", lag, exitLag);
+            switchTo(STREAMING_ROUTE, CATCH_UP_ROUTE, false);
+        }
+        report(lag);
+    }
+
+    private void switchTo(String start, String stop, boolean catchUp) {
+        try {
+            camelContext.getRouteController().stopRoute(stop);
+            active = catchUp;
+            lastCount = (long) replayed.count();
+            lastNanos = System.nanoTime();
+            camelContext.getRouteController().startRoute(start);
+        } catch (Exception e) {
+            log.warn("Failed to switch the order topic from {} to {}: {}", stop, start, e.getMessage());
+        }
+    }
+
+    private void report(long lag) {
+        long now = System.nanoTime();
+        long count = (long) replayed.count();
+        if (lastNanos != 0 && now > lastNanos) {
+            rate = active ? (count - lastCount) * 1e9 / (now - lastNanos) : 0;
+        }
+        lastCount = count;
+        lastNanos = now;
+        if (active) {
+            log.info("Catch-up replay: {} events read, {} events/s, lag {}{}", count, Math.round(rate), lag,
+                    rate > 0 && lag > 0 ? String.format(", ~%d s to go", Math.round(lag / rate)) : "");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A write that changed [Orders], as published on the order change feed: the row as written
+ * plus which business fields the write changed.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderChange {
+
+    public static final String INSERT = "INSERT";
+    public static final String UPDATE = "UPDATE";
+    // Written, but the database cannot tell an insert from an update (no MERGE OUTPUT)
+    public static final String UPSERT = "UPSERT";
+
+    private String action;
+    private int id;
+    private int version;
+    private String name;
+    private String description;
+    private LocalDate effectiveDate;
+    private String status;
+    // Business fields the write changed, null when the previous row is unknown
+    private List<String> changedFields;
+
+    /**
+     * A change for an order whose previous row is unknown
+     */
+    static OrderChange of(String action, OrderModel order) {
+        return OrderChange.builder()
+                .action(action)
+                .id(order.getId())
+                .version(order.getVersion())
+                .name(order.getName())
+                .description(order.getDescription())
+                .effectiveDate(order.getEffectiveDate() == null ? null : order.getEffectiveDate().toLocalDate())
+                .status(order.getStatus() == null ? null : order.getStatus().name())
+                .build();
+    }
+
+    /**
+     * A change reported by MERGE OUTPUT, diffed against the previous row (all null for an insert)
+     */
+    static OrderChange of(String action, OrderModel order,
+                          String previousName, String previousDescription, LocalDate previousEffectiveDate, String previousStatus) {
+        OrderChange change = of(action, order);
+        List<String> changed = new ArrayList<>(4);
+        if (INSERT.equals(action) || !Objects.equals(change.name, previousName)) {
+            changed.add("name");
+        }
+        if (INSERT.equals(action) || !Objects.equals(change.description, previousDescription)) {
+            changed.add("description");
+        }
+        if (INSERT.equals(action) || !Objects.equals(change.effectiveDate, previousEffectiveDate)) {
+            changed.add("effectiveDate");
+        }
+        if (INSERT.equals(action) || !Objects.equals(change.status, previousStatus)) {
+            changed.add("status");
+        }
+        change.setChangedFields(changed);
+        return change;
+    }
+
+    UpsertOutcome outcome() {
+        if (INSERT.equals(action)) {
+            return UpsertOutcome.INSERTED;
+        }
+        return UPDATE.equals(action) ? UpsertOutcome.UPDATED : UpsertOutcome.UPSERTED;
+    }
+}
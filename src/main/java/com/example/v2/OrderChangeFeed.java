@@ -0,0 +1,128 @@
+package com.example.v2;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Change feed of [Orders]: every insert or update the upsert actually made is published to a
+ * compacted topic keyed by order id, so downstream systems can follow the table instead of
+ * re-reading it. Upserts the MERGE skipped never reach the feed.
+ * <p>
+ * Inserts, updates and the changed fields come from the MERGE {@code OUTPUT} clause on SQL Server;
+ * other databases only report that a row was written ({@link OrderChange#UPSERT}, no field list).
+ * <p>
+ * Changes whose publish failed travel with their order record to its retry topic, in a header: by the
+ * time the record is retried the row is already written, so the MERGE reports no change to publish.
+ */
+@Configuration
+public class OrderChangeFeed {
+
+    // Exchange property holding the changes an upsert made, published after the write
+    static final String ORDER_CHANGES = "orderChanges";
+    // Kafka header of a retried order record carrying changes that were written but not published
+    static final String UNPUBLISHED_HEADER = "orderUnpublishedChanges";
+
+    @Value("${order.change-feed.enabled:false}")
+    private boolean enabled;
+    @Value("${order.change-feed.topic:order-changes}")
+    private String topicName;
+    @Value("${order.change-feed.partitions:3}")
+    private int partitions;
+    @Value("${order.change-feed.replicas:1}")
+    private int replicas;
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String brokerUrl;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ObjectWriter writer = mapper.writerFor(OrderChange.class);
+    private final ObjectWriter listWriter = mapper.writerFor(new TypeReference<List<OrderChange>>() { });
+    private final ObjectReader listReader = mapper.readerFor(new TypeReference<List<OrderChange>>() { });
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Compacted, so the topic keeps the latest change of every order, created by the Kafka admin at startup
+     */
+    @Bean
+    @ConditionalOnProperty(name = "order.change-feed.enabled", havingValue = "true")
+    public NewTopic orderChangeTopic() {
+        return TopicBuilder.name(topicName)
+                .partitions(partitions)
+                .replicas(replicas)
+                .compact()
+                .build();
+    }
+
+    /**
+     * Keeps the changes of an upsert on the exchange, for the publish step after the write
+     */
+    void collect(Exchange exchange, List<OrderChange> changes) {
+        if (enabled && !changes.isEmpty()) {
+            exchange.setProperty(ORDER_CHANGES, changes);
+        }
+    }
+
+    /**
+     * Moves the changes of a failed exchange into the header its retry record is published with
+     */
+    void holdUnpublished(Exchange exchange) throws Exception {
+        @SuppressWarnings("unchecked")
+        List<OrderChange> changes = exchange.getProperty(ORDER_CHANGES, List.class);
+        if (changes != null) {
+            exchange.getIn().setHeader(UNPUBLISHED_HEADER, listWriter.writeValueAsBytes(changes));
+            exchange.removeProperty(ORDER_CHANGES);
+        }
+    }
+
+    boolean hasUnpublished(Exchange exchange) {
+        return exchange.getIn().getHeader(UNPUBLISHED_HEADER) != null;
+    }
+
+    /**
+     * Changes a retried record carries from an earlier attempt, empty for any other record
+     */
+    List<OrderChange> unpublished(Exchange exchange) throws Exception {
+        Object value = exchange.getIn().getHeader(UNPUBLISHED_HEADER);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        // Kafka header values arrive as raw bytes
+        return value instanceof byte[] ? listReader.readValue((byte[]) value) : listReader.readValue(value.toString());
+    }
+
+    /**
+     * Turns a split {@link OrderChange} into the Kafka record, keyed by order id so compaction keeps the latest
+     */
+    void toRecord(Exchange exchange) throws Exception {
+        OrderChange change = exchange.getIn().getBody(OrderChange.class);
+        // Consumer and route headers must not leak into the change records
+        exchange.getIn().removeHeaders("*");
+        exchange.getIn().setHeader(KafkaConstants.KEY, String.valueOf(change.getId()));
+        exchange.getIn().setBody(writer.writeValueAsBytes(change));
+    }
+
+    String endpointUri() {
+        return String.format("kafka:%s?brokers=%s"
+                + "&valueSerializer=org.apache.kafka.common.serialization.ByteArraySerializer"
+                + "&keySerializer=org.apache.kafka.common.serialization.StringSerializer", topicName, brokerUrl);
+    }
+}
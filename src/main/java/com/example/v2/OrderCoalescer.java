@@ -0,0 +1,73 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.camel.AggregationStrategy;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.springframework.stereotype.Component;
+
+/**
+ * Aggregation strategy of the per-order coalescing window: of all events of one order id in a
+ * window only the latest (highest version, then highest offset) is passed on to the upsert.
+ * <p>
+ * A superseded record is completed in the {@link OffsetCommitTracker} right away. That is safe
+ * because the surviving record of the same key (and so the same partition) is still in flight,
+ * and the tracker never commits past an in-flight offset; if the service dies before the survivor
+ * is written, the survivor is redelivered and makes the superseded state obsolete again.
+ */
+@Component
+public class OrderCoalescer implements AggregationStrategy {
+
+    // Exchange property counting the events folded into the surviving exchange
+    static final String COALESCED_EVENTS = "coalescedEvents";
+
+    private final OffsetCommitTracker offsetCommitTracker;
+    private final OrderMetrics orderMetrics;
+    private final DistributionSummary windowEvents;
+
+    public OrderCoalescer(OffsetCommitTracker offsetCommitTracker, OrderMetrics orderMetrics, MeterRegistry meterRegistry) {
+        this.offsetCommitTracker = offsetCommitTracker;
+        this.orderMetrics = orderMetrics;
+        this.windowEvents = DistributionSummary.builder("orders.coalesce.events")
+                .description("Events of one order folded into a single upsert per coalescing window")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Exchange aggregate(Exchange oldExchange, Exchange newExchange) {
+        if (oldExchange == null) {
+            return newExchange;
+        }
+
+        int events = oldExchange.getProperty(COALESCED_EVENTS, 1, Integer.class) + 1;
+        boolean newWins = isLater(newExchange, oldExchange);
+        Exchange survivor = newWins ? newExchange : oldExchange;
+        Exchange superseded = newWins ? oldExchange : newExchange;
+
+        offsetCommitTracker.complete(superseded);
+        orderMetrics.count(UpsertOutcome.COALESCED);
+        survivor.setProperty(COALESCED_EVENTS, events);
+        return survivor;
+    }
+
+    @Override
+    public void onCompletion(Exchange exchange) {
+        windowEvents.record(exchange.getProperty(COALESCED_EVENTS, 1, Integer.class));
+    }
+
+    /**
+     * Higher version wins, on equal versions the later Kafka offset (or the later arrival without one)
+     */
+    static boolean isLater(Exchange candidate, Exchange current) {
+        int candidateVersion = candidate.getIn().getBody(OrderModel.class).getVersion();
+        int currentVersion = current.getIn().getBody(OrderModel.class).getVersion();
+        if (candidateVersion != currentVersion) {
+            return candidateVersion > currentVersion;
+        }
+        Long candidateOffset = candidate.getIn().getHeader(KafkaConstants.OFFSET, Long.class);
+        Long currentOffset = current.getIn().getHeader(KafkaConstants.OFFSET, Long.class);
+        return candidateOffset == null || currentOffset == null || candidateOffset >= currentOffset;
+    }
+}
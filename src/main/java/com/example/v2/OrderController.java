@@ -0,0 +1,88 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read API over [Orders] for other teams, so their reads stop competing with the ingest writes.
+ * <p>
+ * Single orders are served from the {@link OrderNearCache}; status listings are keyset pages
+ * (pass the last id of a page as {@code afterId} for the next one). Once the
+ * {@link OrderStatusIndex} is ready, status ids and counts come from memory and listed rows
+ * from the near cache, its misses read in one query per shard; before that, listings read
+ * [Orders] and warm the cache.
+ */
+@RestController
+@RequestMapping("/orders")
+@ConditionalOnProperty(name = "order.route.variant", havingValue = "v2", matchIfMissing = true)
+public class OrderController {
+
+    private final OrderNearCache orderNearCache;
+    private final OrderScanner orderScanner;
+    private final OrderStatusIndex orderStatusIndex;
+
+    @Value("${order.read-api.max-page-size:1000}")
+    private int maxPageSize;
+
+    public OrderController(OrderNearCache orderNearCache, OrderScanner orderScanner, OrderStatusIndex orderStatusIndex) {
+        this.orderNearCache = orderNearCache;
+        this.orderScanner = orderScanner;
+        this.orderStatusIndex = orderStatusIndex;
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<OrderEntity> get(@PathVariable int id) {
+        OrderEntity order = orderNearCache.get(id);
+        return order == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(order);
+    }
+
+    @GetMapping
+    public List<OrderEntity> byStatus(@RequestParam String status,
+                                      @RequestParam(defaultValue = "0") int afterId,
+                                      @RequestParam(defaultValue = "100") int limit) {
+        int pageSize = pageSize(limit);
+        if (orderStatusIndex.isReady()) {
+            return orderNearCache.getAll(orderStatusIndex.ids(status, afterId, pageSize));
+        }
+
+        long stamp = orderNearCache.stamp();
+        List<OrderEntity> page = orderScanner.page(status, afterId, pageSize);
+        for (OrderEntity order : page) {
+            orderNearCache.load(order, stamp);
+        }
+        return page;
+    }
+
+    @GetMapping("/ids")
+    public ResponseEntity<List<Integer>> idsByStatus(@RequestParam String status,
+                                                     @RequestParam(defaultValue = "0") int afterId,
+                                                     @RequestParam(defaultValue = "1000") int limit) {
+        if (!orderStatusIndex.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(orderStatusIndex.ids(status, afterId, pageSize(limit)));
+    }
+
+    @GetMapping("/status-counts")
+    public ResponseEntity<Map<String, Integer>> statusCounts() {
+        if (!orderStatusIndex.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(orderStatusIndex.counts());
+    }
+
+    private int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, maxPageSize));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers the business fingerprint and version of the last state sent to the database per order id,
+ * so events that repeat the current state of an order can be dropped before the upsert.
+ * <p>
+ * The fingerprint is recorded when an order is admitted (not after the write completes) so that
+ * batched writes still in flight are taken into account; a failed write must call
+ * {@link #invalidate(int)} so the next event for that order goes to the database again.
+ * <p>
+ * The version is part of the recorded value because the MERGE may still reject an admitted event
+ * as stale: a replayed older event must not make a newer version with the same state look unchanged.
+ */
+@Component
+public class OrderFingerprintCache {
+
+    private final boolean enabled;
+    private final BoundedIntLongMap fingerprints;
+    private final Counter hits;
+    private final Counter misses;
+
+    public OrderFingerprintCache(@Value("${order.fingerprint-cache.enabled:true}") boolean enabled,
+                                 @Value("${order.fingerprint-cache.max-entries:1048576}") int maxEntries,
+                                 MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.fingerprints = new BoundedIntLongMap(enabled ? maxEntries : 1);
+        this.hits = Counter.builder("orders.fingerprint.cache")
+                .description("Order events matching the last written state")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("orders.fingerprint.cache")
+                .description("Order events carrying a change or an unknown order")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("orders.fingerprint.cache.size", fingerprints, BoundedIntLongMap::size)
+                .description("Order fingerprints currently cached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Decides whether the order has to be written, recording its fingerprint if so.
+     *
+     * @return false if the order repeats the last state written for its id
+     */
+    public boolean admit(OrderEntity order) {
+        return admit(order.getId(), order.businessFingerprint(), order.getVersion());
+    }
+
+    /**
+     * Same as {@link #admit(OrderEntity)} for an already computed business fingerprint
+     */
+    public boolean admit(int orderId, long fingerprint, int version) {
+        if (!enabled) {
+            return true;
+        }
+        if (fingerprints.putIfChanged(orderId, fingerprint ^ (version * 0x9E3779B97F4A7C15L))) {
+            misses.increment();
+            return true;
+        }
+        hits.increment();
+        return false;
+    }
+
+    /**
+     * Forgets the order, to be called when a write for it failed
+     */
+    public void invalidate(int orderId) {
+        fingerprints.remove(orderId);
+    }
+
+    public long hitCount() {
+        return (long) hits.count();
+    }
+
+    public long missCount() {
+        return (long) misses.count();
+    }
+}
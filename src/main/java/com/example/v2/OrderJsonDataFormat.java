@@ -0,0 +1,76 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.DataFormat;
+import org.apache.camel.spi.DataFormatName;
+import org.apache.camel.support.service.ServiceSupport;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * JSON data format dedicated to {@link OrderModel}, a drop-in for
+ * {@code .unmarshal().json(JsonLibrary.Jackson, OrderModel.class)} on the hot path.
+ * <p>
+ * The reader and writer are built once for the one type, property access goes through
+ * Blackbird-generated lambdas instead of reflection, and a {@code byte[]} body (Kafka
+ * {@code ByteArrayDeserializer}) is parsed in place without building a String first.
+ */
+@Component
+public class OrderJsonDataFormat extends ServiceSupport implements DataFormat, DataFormatName {
+
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    public OrderJsonDataFormat() {
+        ObjectMapper mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .registerModule(new BlackbirdModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.reader = mapper.readerFor(OrderModel.class);
+        this.writer = mapper.writerFor(OrderModel.class);
+    }
+
+    @Override
+    public String getDataFormatName() {
+        return "orderJson";
+    }
+
+    @Override
+    public void marshal(Exchange exchange, Object graph, OutputStream stream) throws Exception {
+        writer.writeValue(stream, graph);
+    }
+
+    @Override
+    public Object unmarshal(Exchange exchange, InputStream stream) throws Exception {
+        Object body = exchange.getMessage().getBody();
+        if (body instanceof byte[]) {
+            return reader.readValue((byte[]) body);
+        }
+        return reader.readValue(stream);
+    }
+
+    /**
+     * Encodes an order straight to bytes, for producers that bypass the Camel marshal step
+     */
+    public byte[] encode(OrderModel order) throws Exception {
+        return writer.writeValueAsBytes(order);
+    }
+
+    /**
+     * Decodes an order straight from bytes, for callers outside a Camel route
+     */
+    public OrderModel decode(byte[] payload) throws Exception {
+        return reader.readValue(payload);
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import com.github.javafaker.Faker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * High-rate synthetic order producer for load testing, replacing the Faker timer routes as a
+ * load source when {@code order.load-generator.enabled=true}.
+ * <p>
+ * Payload templates are generated with Faker once at startup; each producer thread then only
+ * picks an order id and version from the {@link OrderLoadPattern}, encodes it in the configured
+ * wire format and hands it to a shared Kafka producer, paced to the target rate.
+ */
+@Slf4j
+@Component
+public class OrderLoadGenerator implements SmartLifecycle {
+
+    @Value("${order.load-generator.enabled:false}")
+    private boolean enabled;
+    @Value("${order.load-generator.rate:1000}")
+    private int rate;
+    @Value("${order.load-generator.threads:2}")
+    private int threads;
+    @Value("${order.load-generator.key-space:5000}")
+    private int keySpace;
+    @Value("${order.load-generator.key-distribution:uniform}")
+    private String keyDistribution;
+    @Value("${order.load-generator.zipf-exponent:1.0}")
+    private double zipfExponent;
+    @Value("${order.load-generator.duplicate-ratio:0.0}")
+    private double duplicateRatio;
+    @Value("${order.load-generator.out-of-order-ratio:0.0}")
+    private double outOfOrderRatio;
+    @Value("${order.load-generator.description-length:500}")
+    private int descriptionLength;
+    @Value("${order.load-generator.templates:1024}")
+    private int templateCount;
+    @Value("${order.wire-format:json}")
+    private String wireFormat;
+    @Value("${kafka-topic-name}")
+    private String topicName;
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String brokerUrl;
+
+    private final OrderJsonDataFormat orderJsonDataFormat;
+    private final OrderBinaryDataFormat orderBinaryDataFormat;
+    private final Counter sent;
+    private final Counter failed;
+
+    private volatile boolean running;
+    private ExecutorService executor;
+    private KafkaProducer<String, byte[]> producer;
+
+    public OrderLoadGenerator(OrderJsonDataFormat orderJsonDataFormat,
+                              OrderBinaryDataFormat orderBinaryDataFormat,
+                              MeterRegistry meterRegistry) {
+        this.orderJsonDataFormat = orderJsonDataFormat;
+        this.orderBinaryDataFormat = orderBinaryDataFormat;
+        this.sent = Counter.builder("orders.load.sent")
+                .description("Synthetic order events handed to the Kafka producer")
+                .register(meterRegistry);
+        this.failed = Counter.builder("orders.load.failed")
+                .description("Synthetic order events the Kafka producer failed to send")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        boolean zipf = "zipf".equalsIgnoreCase(keyDistribution);
+        OrderLoadPattern pattern = new OrderLoadPattern(keySpace, zipf ? zipfExponent : 0,
+                duplicateRatio, outOfOrderRatio, templates());
+
+        producer = new KafkaProducer<>(producerConfig(), new StringSerializer(), new ByteArraySerializer());
+        AtomicInteger threadIds = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "order-load-" + threadIds.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        running = true;
+        double perThreadRate = rate > 0 ? (double) rate / threads : 0;
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> produce(pattern, perThreadRate));
+        }
+        log.info("Order load generator started: {} msg/s over {} threads, {} {} keys, {} wire format",
+                rate > 0 ? rate : "unthrottled", threads, keySpace, zipf ? "zipf" : "uniform", wireFormat);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        producer.close(Duration.ofSeconds(10));
+        log.info("Order load generator stopped after {} events ({} failed)", (long) sent.count(), (long) failed.count());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Sends events until stopped, parking whenever the thread gets ahead of its share of the rate
+     */
+    private void produce(OrderLoadPattern pattern, double perThreadRate) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long nanosPerEvent = perThreadRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / perThreadRate) : 0;
+        long start = System.nanoTime();
+        long events = 0;
+
+        while (running) {
+            OrderModel order = pattern.next(random);
+            try {
+                producer.send(new ProducerRecord<>(topicName, String.valueOf(order.getId()), encode(order)),
+                        (metadata, e) -> {
+                            if (e != null) {
+                                failed.increment();
+                            }
+                        });
+                sent.increment();
+            } catch (Exception e) {
+                failed.increment();
+                log.warn("Failed to send synthetic order {}: {}", order.getId(), e.getMessage());
+            }
+
+            events++;
+            if (nanosPerEvent > 0) {
+                long ahead = start + events * nanosPerEvent - System.nanoTime();
+                if (ahead > 0) {
+                    LockSupport.parkNanos(ahead);
+                }
+            }
+        }
+    }
+
+    private byte[] encode(OrderModel order) throws Exception {
+        return "binary".equalsIgnoreCase(wireFormat)
+                ? orderBinaryDataFormat.encode(order)
+                : orderJsonDataFormat.encode(order);
+    }
+
+    /**
+     * Pre-generates the payload pool with descriptions of the configured length
+     */
+    private OrderModel[] templates() {
+        Faker faker = new Faker(new Locale("en-NZ"));
+        StatusEnum[] statuses = StatusEnum.values();
+        OffsetDateTime now = OffsetDateTime.now();
+
+        OrderModel[] templates = new OrderModel[templateCount];
+        for (int i = 0; i < templateCount; i++) {
+            StringBuilder description = new StringBuilder(descriptionLength + 200);
+            while (description.length() < descriptionLength) {
+                description.append(faker.lorem().paragraph()).append(' ');
+            }
+            templates[i] = OrderModel.builder()
+                    .name(faker.lorem().word())
+                    .description(description.substring(0, descriptionLength))
+                    .effectiveDate(now.plusMinutes(faker.number().numberBetween(2, 58)))
+                    .status(statuses[faker.number().numberBetween(0, statuses.length)])
+                    .build();
+        }
+        return templates;
+    }
+
+    private Map<String, Object> producerConfig() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokerUrl);
+        config.put(ProducerConfig.CLIENT_ID_CONFIG, "order-load-generator");
+        config.put(ProducerConfig.ACKS_CONFIG, "1");
+        config.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, 256 * 1024);
+        return config;
+    }
+}
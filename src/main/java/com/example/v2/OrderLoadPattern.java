@@ -0,0 +1,94 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Shape of the synthetic order stream sent by {@link OrderLoadGenerator}: which order id comes
+ * next, and whether it carries a new version, repeats the last event of that order or replays
+ * an older version.
+ * <p>
+ * Payload fields come from a fixed pool of pre-generated templates, so producing an event is a
+ * few array lookups. Thread-safe; the last version and template per order are updated together.
+ */
+final class OrderLoadPattern {
+
+    private final int keySpace;
+    // Cumulative Zipf distribution over the order ids, null for a uniform distribution
+    private final double[] zipfCdf;
+    private final double duplicateRatio;
+    private final double outOfOrderRatio;
+    private final OrderModel[] templates;
+    // Per order: last version sent in the high 32 bits, its template index in the low 32 bits
+    private final AtomicLongArray lastSent;
+
+    OrderLoadPattern(int keySpace, double zipfExponent, double duplicateRatio, double outOfOrderRatio,
+                     OrderModel[] templates) {
+        if (keySpace <= 0 || templates.length == 0) {
+            throw new IllegalArgumentException("Key space and template pool must not be empty");
+        }
+        this.keySpace = keySpace;
+        this.zipfCdf = zipfExponent > 0 ? zipfCdf(keySpace, zipfExponent) : null;
+        this.duplicateRatio = duplicateRatio;
+        this.outOfOrderRatio = outOfOrderRatio;
+        this.templates = templates;
+        this.lastSent = new AtomicLongArray(keySpace);
+    }
+
+    /**
+     * Next event of the stream; order ids run from 1 to the key space
+     */
+    OrderModel next(Random random) {
+        int key = nextKey(random);
+        double roll = random.nextDouble();
+        long last = lastSent.get(key);
+        int lastVersion = (int) (last >>> 32);
+
+        if (lastVersion > 0 && roll < duplicateRatio) {
+            return order(key, lastVersion, (int) last);
+        }
+        if (lastVersion > 1 && roll < duplicateRatio + outOfOrderRatio) {
+            return order(key, 1 + random.nextInt(lastVersion - 1), random.nextInt(templates.length));
+        }
+
+        int template = random.nextInt(templates.length);
+        long sent = lastSent.updateAndGet(key, current -> (((current >>> 32) + 1) << 32) | template);
+        return order(key, (int) (sent >>> 32), template);
+    }
+
+    int nextKey(Random random) {
+        if (zipfCdf == null) {
+            return random.nextInt(keySpace);
+        }
+        int index = Arrays.binarySearch(zipfCdf, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, keySpace - 1);
+    }
+
+    private OrderModel order(int key, int version, int template) {
+        OrderModel source = templates[template];
+        return OrderModel.builder()
+                .id(key + 1)
+                .version(version)
+                .name(source.getName())
+                .description(source.getDescription())
+                .effectiveDate(source.getEffectiveDate())
+                .status(source.getStatus())
+                .build();
+    }
+
+    private static double[] zipfCdf(int keySpace, double exponent) {
+        double[] cdf = new double[keySpace];
+        double total = 0;
+        for (int rank = 1; rank <= keySpace; rank++) {
+            total += 1 / Math.pow(rank, exponent);
+            cdf[rank - 1] = total;
+        }
+        for (int i = 0; i < keySpace; i++) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+}
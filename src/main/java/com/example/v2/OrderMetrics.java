@@ -0,0 +1,108 @@
+package com.example.v2;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer instrumentation of the V2 order pipeline.
+ * <p>
+ * Stage timers ({@code orders.stage}, tagged by stage) work as a lap clock carried on the
+ * exchange: {@link #received(Exchange)} records the Kafka-to-route dwell and starts the clock,
+ * every {@link #lap(String)} processor records the time since the previous lap. Outcome counters
+ * ({@code orders.outcome}) break every event down into one {@link UpsertOutcome}.
+ */
+@Component
+public class OrderMetrics {
+
+    // Exchange property holding the System.nanoTime() of the last lap
+    static final String STAGE_CLOCK = "orderStageClock";
+
+    private final MeterRegistry meterRegistry;
+    private final Timer dwell;
+    private final Map<UpsertOutcome, Counter> outcomes = new EnumMap<>(UpsertOutcome.class);
+    private final Map<String, Timer> stages = new ConcurrentHashMap<>();
+
+    public OrderMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.dwell = stageTimer("dwell");
+        for (UpsertOutcome outcome : UpsertOutcome.values()) {
+            outcomes.put(outcome, Counter.builder("orders.outcome")
+                    .description("Order events by outcome")
+                    .tag("outcome", outcome.tag())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Records the time the record spent between the Kafka producer and the route, and starts the lap clock
+     */
+    public void received(Exchange exchange) {
+        Long timestamp = exchange.getIn().getHeader(KafkaConstants.TIMESTAMP, Long.class);
+        if (timestamp != null) {
+            dwell.record(Math.max(0, System.currentTimeMillis() - timestamp), TimeUnit.MILLISECONDS);
+        }
+        exchange.setProperty(STAGE_CLOCK, System.nanoTime());
+    }
+
+    /**
+     * Processor recording the time since the previous lap as the given stage
+     */
+    public Processor lap(String stage) {
+        Timer timer = stageTimer(stage);
+        return exchange -> {
+            long now = System.nanoTime();
+            Long previous = exchange.getProperty(STAGE_CLOCK, Long.class);
+            if (previous != null) {
+                timer.record(now - previous, TimeUnit.NANOSECONDS);
+            }
+            exchange.setProperty(STAGE_CLOCK, now);
+        };
+    }
+
+    /**
+     * Times a call as the given stage, for steps that do not run on the exchange that carries the clock
+     */
+    public <T> T time(String stage, Supplier<T> call) {
+        return stageTimer(stage).record(call);
+    }
+
+    public void record(String stage, long nanos) {
+        stageTimer(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void count(UpsertOutcome outcome) {
+        outcomes.get(outcome).increment();
+    }
+
+    public void count(UpsertOutcome outcome, int events) {
+        if (events > 0) {
+            outcomes.get(outcome).increment(events);
+        }
+    }
+
+    /**
+     * The timer of a stage, for controllers sampling the pipeline's latency
+     */
+    public Timer stage(String stage) {
+        return stageTimer(stage);
+    }
+
+    private Timer stageTimer(String stage) {
+        return stages.computeIfAbsent(stage, name -> Timer.builder("orders.stage")
+                .description("Time spent per stage of the order pipeline")
+                .tag("stage", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.v2.OrderValidationException.Violation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.camel.Exchange;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hand-written validator for {@link OrderModel}, replacing {@code bean-validator://ValidateModel}
+ * in the consumer.
+ * <p>
+ * The annotations on {@code OrderModel} are not Bean Validation constraints, so the endpoint did
+ * reflective work per message without checking anything. This enforces what the transform and
+ * the [Orders] table actually rely on with plain field checks; a valid order allocates nothing.
+ */
+@Component
+public class OrderModelValidator {
+
+    // Column sizes of [Orders]
+    static final int MAX_NAME_LENGTH = 255;
+    static final int MAX_DESCRIPTION_LENGTH = 1000;
+
+    private final Counter rejectedOrders;
+
+    public OrderModelValidator(MeterRegistry meterRegistry) {
+        this.rejectedOrders = Counter.builder("orders.rejected")
+                .description("Order events rejected by validation")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Validates the {@link OrderModel} body of the exchange
+     *
+     * @throws OrderValidationException listing every violation
+     */
+    public void validate(Exchange exchange) throws OrderValidationException {
+        OrderModel order = exchange.getIn().getBody(OrderModel.class);
+        List<Violation> violations = check(order);
+        if (!violations.isEmpty()) {
+            rejectedOrders.increment();
+            throw new OrderValidationException(exchange, order == null ? 0 : order.getId(), violations);
+        }
+    }
+
+    /**
+     * Checks an order, returning its violations or an empty list
+     */
+    public List<Violation> check(OrderModel order) {
+        if (order == null) {
+            return Collections.singletonList(new Violation("order", "must not be null"));
+        }
+
+        List<Violation> violations = null;
+        if (order.getId() <= 0) {
+            violations = add(violations, "id", "must be positive");
+        }
+        if (order.getVersion() < 0) {
+            violations = add(violations, "version", "must not be negative");
+        }
+        if (order.getName() == null || order.getName().isEmpty()) {
+            violations = add(violations, "name", "must not be empty");
+        } else if (order.getName().length() > MAX_NAME_LENGTH) {
+            violations = add(violations, "name", "must be at most " + MAX_NAME_LENGTH + " characters");
+        }
+        if (order.getDescription() == null) {
+            violations = add(violations, "description", "must not be null");
+        } else if (order.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+            violations = add(violations, "description", "must be at most " + MAX_DESCRIPTION_LENGTH + " characters");
+        }
+        if (order.getEffectiveDate() == null) {
+            violations = add(violations, "effectiveDate", "must not be null");
+        }
+        if (order.getStatus() == null) {
+            violations = add(violations, "status", "must not be null");
+        }
+        return violations == null ? Collections.emptyList() : violations;
+    }
+
+    private static List<Violation> add(List<Violation> violations, String field, String message) {
+        List<Violation> list = violations == null ? new ArrayList<>(2) : violations;
+        list.add(new Violation(field, message));
+        return list;
+    }
+}
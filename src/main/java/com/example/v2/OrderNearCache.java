@@ -0,0 +1,305 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of recently read or written [Orders] rows, serving the read API without a
+ * database round trip.
+ * <p>
+ * The consumer puts every row it writes and invalidates rows it could not confirm; reads miss
+ * through to the database. The cache is bounded by an estimate of the memory the rows take,
+ * split over striped LRU segments so readers and the consumer rarely contend.
+ * <p>
+ * A read-through only caches its row if no write touched that order while it was loading,
+ * so a slow read can never put back a row older than one the consumer just wrote. Writes are
+ * stamped per slot of ids rather than per cache, so steady ingest of other orders does not keep
+ * reads from being cached. Rows expire some time after they were cached, which bounds how long
+ * writes by other systems stay hidden.
+ */
+@Component
+@ConditionalOnProperty(name = "order.route.variant", havingValue = "v2", matchIfMissing = true)
+public class OrderNearCache {
+
+    private static final int STRIPES = 16;
+    // Write stamp slots per segment, ids sharing a slot only make each other's reads skip the cache
+    private static final int SLOTS = 1024;
+    // Object headers, references and boxed fields of a cached OrderEntity, its holder and map entry
+    private static final int ENTRY_OVERHEAD = 184;
+
+    private final boolean enabled;
+    private final long expireAfterWriteNanos;
+    private final Segment[] segments = new Segment[STRIPES];
+    private final OrderScanner orderScanner;
+    private final AtomicLong writes = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+
+    public OrderNearCache(@Value("${order.near-cache.enabled:true}") boolean enabled,
+                          @Value("${order.near-cache.max-bytes:67108864}") long maxBytes,
+                          @Value("${order.near-cache.expire-after-write-ms:300000}") long expireAfterWriteMs,
+                          OrderScanner orderScanner,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.expireAfterWriteNanos = TimeUnit.MILLISECONDS.toNanos(expireAfterWriteMs);
+        this.orderScanner = orderScanner;
+        for (int i = 0; i < STRIPES; i++) {
+            segments[i] = new Segment(maxBytes / STRIPES);
+        }
+        this.hits = Counter.builder("orders.near-cache")
+                .description("Order reads served from the near cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("orders.near-cache")
+                .description("Order reads that went to the database")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("orders.near-cache.size", this, OrderNearCache::size)
+                .description("Orders currently cached")
+                .register(meterRegistry);
+        Gauge.builder("orders.near-cache.bytes", this, OrderNearCache::weight)
+                .description("Estimated memory taken by the cached orders")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The order with the id, from the cache or else the database; null if it does not exist
+     */
+    public OrderEntity get(int id) {
+        if (enabled) {
+            OrderEntity cached = segment(id).get(id);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        long stamp = writes.get();
+        OrderEntity loaded = orderScanner.findById(id);
+        if (loaded != null) {
+            load(loaded, stamp);
+        }
+        return loaded;
+    }
+
+    /**
+     * The orders with the ids that exist, in the order of the ids; the ones not cached are read
+     * with one query per shard rather than one per id
+     */
+    public List<OrderEntity> getAll(List<Integer> ids) {
+        Map<Integer, OrderEntity> found = new HashMap<>();
+        List<Integer> missed = new ArrayList<>();
+        for (int id : ids) {
+            OrderEntity cached = enabled ? segment(id).get(id) : null;
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                missed.add(id);
+            }
+        }
+        hits.increment(found.size());
+        misses.increment(missed.size());
+        if (!missed.isEmpty()) {
+            long stamp = writes.get();
+            for (OrderEntity loaded : orderScanner.findByIds(missed)) {
+                load(loaded, stamp);
+                found.put(loaded.getId(), loaded);
+            }
+        }
+        List<OrderEntity> orders = new ArrayList<>(found.size());
+        for (int id : ids) {
+            OrderEntity order = found.get(id);
+            if (order != null) {
+                orders.add(order);
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * Caches a row read from the database unless the order was written since {@code stamp} was taken
+     */
+    public void load(OrderEntity order, long stamp) {
+        if (enabled) {
+            segment(order.getId()).putIfUnchanged(order, stamp);
+        }
+    }
+
+    /**
+     * The current write stamp, to be taken before reading rows meant for {@link #load}
+     */
+    public long stamp() {
+        return writes.get();
+    }
+
+    /**
+     * Caches the row the consumer just wrote
+     */
+    public void put(OrderChange change) {
+        if (enabled) {
+            segment(change.getId()).put(toEntity(change));
+        }
+    }
+
+    /**
+     * Forgets the order, for writes whose outcome the database did not report
+     */
+    public void invalidate(int id) {
+        if (enabled) {
+            segment(id).remove(id);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    private Segment segment(int id) {
+        return segments[Math.floorMod(id * 0x9E3779B9, STRIPES)];
+    }
+
+    static OrderEntity toEntity(OrderChange change) {
+        return OrderEntity.builder()
+                .id(change.getId())
+                .version(change.getVersion())
+                .name(change.getName())
+                .description(change.getDescription())
+                .effectiveDate(change.getEffectiveDate())
+                .status(change.getStatus())
+                .build();
+    }
+
+    /**
+     * Estimated heap taken by a cached row, strings counted as UTF-16
+     */
+    static long weigh(OrderEntity order) {
+        return ENTRY_OVERHEAD + 2L * (length(order.getName()) + length(order.getDescription()) + length(order.getStatus()));
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * One LRU stripe with its own share of the memory bound
+     */
+    private final class Segment {
+
+        private final long maxBytes;
+        private final LinkedHashMap<Integer, Cached> orders = new LinkedHashMap<>(64, 0.75f, true);
+        // Stamp of the last write to any id of the slot
+        private final long[] written = new long[SLOTS];
+        private long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized OrderEntity get(int id) {
+            Cached cached = live(id, System.nanoTime());
+            return cached == null ? null : cached.order;
+        }
+
+        synchronized void put(OrderEntity order) {
+            written[slot(order.getId())] = writes.incrementAndGet();
+            store(order);
+        }
+
+        synchronized void putIfUnchanged(OrderEntity order, long stamp) {
+            if (written[slot(order.getId())] <= stamp && live(order.getId(), System.nanoTime()) == null) {
+                store(order);
+            }
+        }
+
+        synchronized void remove(int id) {
+            written[slot(id)] = writes.incrementAndGet();
+            discard(id);
+        }
+
+        synchronized int size() {
+            return orders.size();
+        }
+
+        synchronized long weight() {
+            return bytes;
+        }
+
+        /**
+         * The cached row unless it expired, which is dropped
+         */
+        private Cached live(int id, long now) {
+            Cached cached = orders.get(id);
+            if (cached != null && expireAfterWriteNanos > 0 && now - cached.cachedAt >= expireAfterWriteNanos) {
+                discard(id);
+                return null;
+            }
+            return cached;
+        }
+
+        private void discard(int id) {
+            Cached removed = orders.remove(id);
+            if (removed != null) {
+                bytes -= weigh(removed.order);
+            }
+        }
+
+        private void store(OrderEntity order) {
+            Cached previous = orders.put(order.getId(), new Cached(order, System.nanoTime()));
+            bytes += weigh(order) - (previous == null ? 0 : weigh(previous.order));
+
+            // Evict least recently used rows until the segment is back within its share
+            Iterator<Map.Entry<Integer, Cached>> eldest = orders.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<Integer, Cached> entry = eldest.next();
+                bytes -= weigh(entry.getValue().order);
+                eldest.remove();
+            }
+        }
+
+        private int slot(int id) {
+            // The bits above the ones picking the segment
+            return ((id * 0x9E3779B9) >>> 4) & (SLOTS - 1);
+        }
+    }
+
+    /**
+     * A cached row and the System.nanoTime() it was cached at
+     */
+    private static final class Cached {
+
+        private final OrderEntity order;
+        private final long cachedAt;
+
+        Cached(OrderEntity order, long cachedAt) {
+            this.order = order;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.v2;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Checks on startup that SQL Server plans the status scan of {@link OrderScanner} as an index
+ * seek with the parameters bound by {@link OrderColumnTypes}, logging a warning if the plan
+ * converts the column ({@code CONVERT_IMPLICIT}) or scans instead.
+ * <p>
+ * Uses {@code SET SHOWPLAN_XML}, which compiles the statement without running it; other
+ * databases are skipped.
+ */
+@Slf4j
+@Component
+public class OrderPlanVerifier {
+
+    private final DataSource dataSource;
+    private final OrderColumnTypes columnTypes;
+    private final boolean enabled;
+
+    public OrderPlanVerifier(DataSource dataSource,
+                             OrderColumnTypes columnTypes,
+                             @Value("${order.sql.verify-plans:true}") boolean enabled) {
+        this.dataSource = dataSource;
+        this.columnTypes = columnTypes;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void verify() {
+        if (!enabled) {
+            return;
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            if (!conn.getMetaData().getDatabaseProductName().contains("SQL Server")) {
+                return;
+            }
+            String plan = showPlan(conn);
+            if (!isSeek(plan)) {
+                log.warn("The status scan of [Orders] is not planned as an index seek, check the parameter types " +
+                        "and the (status, id) index: {}", plan);
+            } else {
+                log.info("The status scan of [Orders] is planned as an index seek");
+            }
+        } catch (SQLException e) {
+            log.warn("Failed to verify the plan of the status scan: {}", e.getMessage());
+        }
+    }
+
+    private String showPlan(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            // SHOWPLAN_XML must be the only statement of its batch
+            statement.execute("SET SHOWPLAN_XML ON");
+            try (PreparedStatement ps = conn.prepareStatement(OrderScanner.PAGE_SQL)) {
+                OrderScanner.bindPage(ps, columnTypes, "PENDING", 0, 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getString(1) : "";
+                }
+            } finally {
+                statement.execute("SET SHOWPLAN_XML OFF");
+            }
+        }
+    }
+
+    /**
+     * Whether the XML plan seeks an index without converting the column side of a predicate
+     */
+    static boolean isSeek(String plan) {
+        return plan.contains("PhysicalOp=\"Index Seek\"") && !plan.contains("CONVERT_IMPLICIT");
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaAdmin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Non-blocking retries for order records that failed: instead of holding up their partition, a
+ * failed record is republished to the retry topic of its next attempt ({@code <topic>.retry-1},
+ * {@code .retry-2}, ...) and its offset on the main topic counts as done. Each retry topic has its
+ * own consumer that waits out the attempt's delay before processing the record again; a record
+ * that fails every attempt, or fails validation (which no retry can fix), ends on {@code <topic>.dlq}.
+ * <p>
+ * Records are republished in the order wire format with their Kafka key, plus headers naming the
+ * attempt, the error and the topic they came from, and any changes still to be published to the
+ * change feed ({@link OrderChangeFeed#UNPUBLISHED_HEADER}).
+ */
+@Slf4j
+@Configuration
+public class OrderRetryPolicy {
+
+    // Exchange property holding the Kafka endpoint a failed record is republished to
+    static final String RETRY_URI = "orderRetryUri";
+    // Kafka headers of a republished record
+    static final String ATTEMPT_HEADER = "orderRetryAttempt";
+    static final String ERROR_HEADER = "orderRetryError";
+    static final String ORIGIN_HEADER = "orderRetryOrigin";
+
+    @Value("${order.retry.enabled:true}")
+    private boolean enabled;
+    @Value("${order.retry.delays-ms:1000,10000,60000}")
+    private long[] delaysMs;
+    @Value("${order.retry.partitions:3}")
+    private int partitions;
+    @Value("${order.retry.replicas:1}")
+    private int replicas;
+    @Value("${kafka-topic-name}")
+    private String topicName;
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String brokerUrl;
+
+    private final OrderJsonDataFormat orderJsonDataFormat;
+    private final OrderBinaryDataFormat orderBinaryDataFormat;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Value("${order.wire-format:json}")
+    private String wireFormat;
+
+    public OrderRetryPolicy(OrderJsonDataFormat orderJsonDataFormat,
+                            OrderBinaryDataFormat orderBinaryDataFormat,
+                            MeterRegistry meterRegistry) {
+        this.orderJsonDataFormat = orderJsonDataFormat;
+        this.orderBinaryDataFormat = orderBinaryDataFormat;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int attempts() {
+        return delaysMs.length;
+    }
+
+    /**
+     * Topic of the given retry attempt, counted from 1
+     */
+    public String retryTopic(int attempt) {
+        return topicName + ".retry-" + attempt;
+    }
+
+    public String deadLetterTopic() {
+        return topicName + ".dlq";
+    }
+
+    /**
+     * The retry and dead-letter topics, created by the Kafka admin at startup
+     */
+    @Bean
+    @ConditionalOnProperty(name = "order.retry.enabled", havingValue = "true", matchIfMissing = true)
+    public KafkaAdmin.NewTopics orderRetryTopics() {
+        List<NewTopic> topics = new ArrayList<>();
+        for (int attempt = 1; attempt <= attempts(); attempt++) {
+            topics.add(TopicBuilder.name(retryTopic(attempt)).partitions(partitions).replicas(replicas).build());
+        }
+        topics.add(TopicBuilder.name(deadLetterTopic()).partitions(partitions).replicas(replicas).build());
+        return new KafkaAdmin.NewTopics(topics.toArray(new NewTopic[0]));
+    }
+
+    /**
+     * Turns the failed exchange into the record for its next attempt, or for the dead-letter topic
+     * once the attempts are used up; leaves the exchange alone when retries are disabled
+     */
+    void prepare(Exchange exchange) throws Exception {
+        if (!enabled) {
+            return;
+        }
+        Exception error = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+        int attempt = attempt(exchange) + 1;
+        boolean deadLetter = error instanceof OrderValidationException || attempt > attempts();
+        String topic = deadLetter ? deadLetterTopic() : retryTopic(attempt);
+
+        Object body = exchange.getIn().getBody();
+        Object key = exchange.getIn().getHeader(KafkaConstants.KEY);
+        String origin = exchange.getIn().getHeader(KafkaConstants.TOPIC, String.class);
+        if (body instanceof OrderModel) {
+            key = ((OrderModel) body).getId();
+        }
+
+        Object unpublished = exchange.getIn().getHeader(OrderChangeFeed.UNPUBLISHED_HEADER);
+
+        // Only the record itself travels on, not the headers the pipeline added
+        exchange.getIn().removeHeaders("*");
+        if (unpublished != null) {
+            exchange.getIn().setHeader(OrderChangeFeed.UNPUBLISHED_HEADER, unpublished);
+        }
+        if (key != null) {
+            exchange.getIn().setHeader(KafkaConstants.KEY, String.valueOf(key));
+        }
+        exchange.getIn().setHeader(ATTEMPT_HEADER, String.valueOf(deadLetter ? attempt - 1 : attempt));
+        exchange.getIn().setHeader(ERROR_HEADER, error == null ? "unknown" : error.getClass().getSimpleName() + ": " + error.getMessage());
+        if (origin != null) {
+            exchange.getIn().setHeader(ORIGIN_HEADER, origin);
+        }
+        exchange.getIn().setBody(payload(body));
+        exchange.setProperty(RETRY_URI, producerUri(topic));
+
+        counter(deadLetter ? "orders.dead-lettered" : "orders.retried", deadLetter ? "reason" : "attempt",
+                deadLetter ? (error instanceof OrderValidationException ? "rejected" : "exhausted") : String.valueOf(attempt))
+                .increment();
+        log.warn("Order record {} sent to {}", key, topic);
+    }
+
+    /**
+     * Holds a retry consumer until the record is due; records of a retry topic share one delay,
+     * so the head of the partition is always the first one due
+     */
+    void awaitDue(Exchange exchange) throws InterruptedException {
+        Long published = exchange.getIn().getHeader(KafkaConstants.TIMESTAMP, Long.class);
+        int attempt = Math.max(1, Math.min(attempt(exchange), attempts()));
+        if (published == null) {
+            return;
+        }
+        long wait = published + delaysMs[attempt - 1] - System.currentTimeMillis();
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * Retry attempt the record is on, 0 for a record from the main topic
+     */
+    static int attempt(Exchange exchange) {
+        Object value = exchange.getIn().getHeader(ATTEMPT_HEADER);
+        if (value == null) {
+            return 0;
+        }
+        // Kafka header values arrive as raw bytes
+        String text = value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : value.toString();
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private byte[] payload(Object body) throws Exception {
+        if (body instanceof OrderModel) {
+            return "binary".equalsIgnoreCase(wireFormat)
+                    ? orderBinaryDataFormat.encode((OrderModel) body)
+                    : orderJsonDataFormat.encode((OrderModel) body);
+        }
+        if (body instanceof byte[]) {
+            return (byte[]) body;
+        }
+        return body == null ? new byte[0] : body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String producerUri(String topic) {
+        return String.format("kafka:%s?brokers=%s"
+                + "&valueSerializer=org.apache.kafka.common.serialization.ByteArraySerializer"
+                + "&keySerializer=org.apache.kafka.common.serialization.StringSerializer", topic, brokerUrl);
+    }
+
+    private Counter counter(String name, String tag, String value) {
+        return counters.computeIfAbsent(name + ':' + value, k -> Counter.builder(name)
+                .description("orders.retried".equals(name)
+                        ? "Failed order records republished to a retry topic"
+                        : "Order records published to the dead-letter topic")
+                .tag(tag, value)
+                .register(meterRegistry));
+    }
+}
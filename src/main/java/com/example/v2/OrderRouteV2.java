@@ -5,99 +5,431 @@ import com.example.OrderModel;
 import com.example.StatusEnum;
 import com.github.javafaker.Faker;
 import lombok.RequiredArgsConstructor;
+import org.apache.camel.Exchange;
+import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.sql.SqlConstants;
+import org.apache.camel.model.AggregateDefinition;
+import org.apache.camel.model.RouteDefinition;
 import org.apache.camel.model.dataformat.JsonLibrary;
+import org.apache.camel.processor.aggregate.GroupedExchangeAggregationStrategy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.time.OffsetDateTime;
 import java.util.*;
 
 @Component
+@ConditionalOnProperty(name = "order.route.variant", havingValue = "v2", matchIfMissing = true)
 public class OrderRouteV2 extends RouteBuilder {
 
     @Value("${kafka-topic-name}")
     private String topicName;
     @Value("${spring.kafka.bootstrap-servers}")
     private String brokerUrl;
+    @Value("${order.upsert.batch.enabled:false}")
+    private boolean batchEnabled;
+    @Value("${order.upsert.batch.max-linger-ms:200}")
+    private long batchMaxLingerMs;
+    @Value("${order.upsert.engine:merge}")
+    private String upsertEngine;
+    @Value("${order.consumer.lanes:0}")
+    private int consumerLanes;
+    @Value("${order.consumer.lane-queue-depth:1000}")
+    private int laneQueueDepth;
+    @Value("${order.consumer.manual-commit:true}")
+    private boolean manualCommit;
+    @Value("${order.consumer.decoder:jackson}")
+    private String consumerDecoder;
+    @Value("${order.wire-format:json}")
+    private String wireFormat;
+    @Value("${order.consumer.group-id:my-group}")
+    private String groupId;
+    @Value("${order.consumer.coalesce.enabled:false}")
+    private boolean coalesceEnabled;
+    @Value("${order.consumer.coalesce.window-ms:200}")
+    private long coalesceWindowMs;
+    @Value("${order.consumer.coalesce.max-events:100}")
+    private int coalesceMaxEvents;
+    @Value("${order.catch-up.max-poll-records:5000}")
+    private int catchUpMaxPollRecords;
+    @Value("${order.catch-up.fetch-min-bytes:1048576}")
+    private int catchUpFetchMinBytes;
+    @Value("${order.catch-up.batch-size:20000}")
+    private int catchUpBatchSize;
+    @Value("${order.catch-up.max-linger-ms:1000}")
+    private long catchUpMaxLingerMs;
 
-    // SQL constants for better readability
-    private static final String MERGE_SQL = 
-            "MERGE [Orders] AS target " +
-            "USING (" +
-                "SELECT :#id as id, " +
-                       ":#name as name, " +
-                       ":#description as description, " +
-                       ":#effectiveDate as effective_date, " +
-                       ":#status as status" +
-            ") AS source " +
-            "ON target.id = source.id " +
-            "WHEN MATCHED AND (" +
-                "target.name != source.name OR " +
-                "target.description != source.description OR " +
-                "target.effective_date != source.effective_date OR " +
-                "target.status != source.status" +
-            ") THEN " +
-                "UPDATE SET " +
-                    "name = source.name, " +
-                    "description = source.description, " +
-                    "effective_date = source.effective_date, " +
-                    "status = source.status " +
-            "WHEN NOT MATCHED THEN " +
-                "INSERT (id, name, description, effective_date, status) " +
-                "VALUES (source.id, source.name, source.description, source.effective_date, source.status);";
-
-    private static final String SELECT_PENDING_ORDERS = 
-            "SELECT * FROM [Orders] WHERE status = 'PENDING'?outputClass=com.example.OrderEntity";
+    private final ShardedOrderWriter orderWriter;
+    private final OrderFingerprintCache orderFingerprintCache;
+    private final OrderVersionGate orderVersionGate;
+    private final OffsetCommitTracker offsetCommitTracker;
+    private final OrderJsonDataFormat orderJsonDataFormat;
+    private final OrderBinaryDataFormat orderBinaryDataFormat;
+    private final OrderModelValidator orderModelValidator;
+    private final OrderMetrics orderMetrics;
+    private final ConsumerLagMonitor consumerLagMonitor;
+    private final OrderChangeFeed orderChangeFeed;
+    private final OrderCoalescer orderCoalescer;
+    private final OrderScanner orderScanner;
+    private final OrderNearCache orderNearCache;
+    private final OrderStatusIndex orderStatusIndex;
+    private final OrderCatchUpController orderCatchUp;
+    private final OrderRetryPolicy orderRetryPolicy;
+    private final OrderBackpressureController orderBackpressure;
+
+    // Shared by the producer timer, building a Faker per exchange is expensive
+    private final Faker faker = new Faker(new Locale("en-NZ"));
+
+    // Exchange property holding the orders of an aggregated batch
+    static final String BATCH_ORDERS = "batchOrders";
+    // Exchange property holding the same orders with the retry headers of their records (OrderBatchRecord)
+    static final String BATCH_RECORDS = "batchRecords";
+    // Header carrying the worker lane an order is processed on
+    static final String ORDER_LANE = "orderLane";
+    // Exchange property holding the offset tickets of an aggregated batch
+    static final String BATCH_TICKETS = "batchTickets";
+
+    public OrderRouteV2(ShardedOrderWriter orderWriter,
+                        OrderFingerprintCache orderFingerprintCache,
+                        OrderVersionGate orderVersionGate,
+                        OffsetCommitTracker offsetCommitTracker,
+                        OrderJsonDataFormat orderJsonDataFormat,
+                        OrderBinaryDataFormat orderBinaryDataFormat,
+                        OrderModelValidator orderModelValidator,
+                        OrderMetrics orderMetrics,
+                        ConsumerLagMonitor consumerLagMonitor,
+                        OrderChangeFeed orderChangeFeed,
+                        OrderCoalescer orderCoalescer,
+                        OrderScanner orderScanner,
+                        OrderNearCache orderNearCache,
+                        OrderStatusIndex orderStatusIndex,
+                        OrderCatchUpController orderCatchUp,
+                        OrderRetryPolicy orderRetryPolicy,
+                        OrderBackpressureController orderBackpressure) {
+        this.orderWriter = orderWriter;
+        this.orderFingerprintCache = orderFingerprintCache;
+        this.orderVersionGate = orderVersionGate;
+        this.offsetCommitTracker = offsetCommitTracker;
+        this.orderJsonDataFormat = orderJsonDataFormat;
+        this.orderBinaryDataFormat = orderBinaryDataFormat;
+        this.orderModelValidator = orderModelValidator;
+        this.orderMetrics = orderMetrics;
+        this.consumerLagMonitor = consumerLagMonitor;
+        this.orderChangeFeed = orderChangeFeed;
+        this.orderCoalescer = orderCoalescer;
+        this.orderScanner = orderScanner;
+        this.orderNearCache = orderNearCache;
+        this.orderStatusIndex = orderStatusIndex;
+        this.orderCatchUp = orderCatchUp;
+        this.orderRetryPolicy = orderRetryPolicy;
+        this.orderBackpressure = orderBackpressure;
+    }
 
     @Override
     public void configure() {
+        // The bulk engine works on chunks, so it always goes through the batching stage
+        boolean bulkEngine = "bulk".equalsIgnoreCase(upsertEngine);
+        boolean batching = batchEnabled || bulkEngine;
+        // JDBC batches cannot return the MERGE OUTPUT rows, so the change feed batches through the staging engine
+        boolean stagedBatches = bulkEngine || orderChangeFeed.isEnabled();
 
-        // Produce data
-        Faker faker = new Faker(new Locale("en-NZ"));
-        
-        from("timer:orderProducer?period={{timer.period}}")
+        // An invalid record is rejected without a stack trace and dead-lettered, its offset counts as done
+        onException(OrderValidationException.class)
+                .handled(true)
+                .log(LoggingLevel.WARN, "Rejected order: ${exception.message}")
+                .process(exchange -> orderMetrics.count(UpsertOutcome.REJECTED))
+                .to("direct:retryOrder")
+                .process(offsetCommitTracker::complete);
+
+        // A record that fails leaves the partition for a retry topic, its offset still counts as done.
+        // Its fingerprint is forgotten, so the retry is not skipped as unchanged.
+        onException(Exception.class)
+                .handled(true)
+                .log(LoggingLevel.ERROR, "Failed to process order: ${exception.message}")
+                .process(this::invalidateFingerprint)
+                .process(exchange -> orderMetrics.count(UpsertOutcome.FAILED))
+                .to("direct:retryOrder")
+                .process(offsetCommitTracker::complete);
+
+        // Produce data (a trickle for demos, see OrderLoadGenerator for load tests)
+        RouteDefinition producer = from("timer:orderProducer?period={{timer.period}}")
                 .autoStartup(false)
                 .routeId("orderProducerV2")
-                .process(this::createRandomOrder)
-                .marshal().json(JsonLibrary.Jackson)
-                .log("Body before sending to Kafka ${body}")
-                .to(String.format("kafka:%s?"
-                        + "brokers=%s"
-                        + "&valueSerializer=org.apache.kafka.common.serialization.StringSerializer"
-                        + "&keySerializer=org.apache.kafka.common.serialization.StringSerializer", topicName, brokerUrl));
-
-        // Consume data and process upsert
-        from(String.format("kafka:%s?brokers=%s&groupId=my-group",topicName, brokerUrl))
-                .routeId("orderConsumerV2")
+                .process(this::createRandomOrder);
+        if (binaryWireFormat()) {
+            producer.marshal(orderBinaryDataFormat)
+                    .log("Body before sending to Kafka: order ${header[kafka.KEY]} (binary)");
+        } else {
+            producer.marshal().json(JsonLibrary.Jackson)
+                    .log("Body before sending to Kafka ${body}");
+        }
+        producer.to(String.format("kafka:%s?"
+                + "brokers=%s"
+                + "&valueSerializer=%s"
+                + "&keySerializer=org.apache.kafka.common.serialization.StringSerializer", topicName, brokerUrl,
+                binaryWireFormat()
+                        ? "org.apache.kafka.common.serialization.ByteArraySerializer"
+                        : "org.apache.kafka.common.serialization.StringSerializer"));
+
+        // Consume data and process upsert, on the consumer thread or fanned out to worker lanes.
+        // With coalescing the order is decoded on the consumer thread and the window fans out instead.
+        RouteDefinition consumer = from(consumerUri())
+                .routeId(OrderCatchUpController.STREAMING_ROUTE)
+                .autoStartup(!orderCatchUp.startsInCatchUp())
+                .process(orderMetrics::received)
                 .log("Received message from Kafka: ${body}")
-                .unmarshal().json(JsonLibrary.Jackson, OrderModel.class)
-                .to("bean-validator://ValidateModel")
-                .process(this::transformOrderModelToEntity)
-                .log("Transformed to entity: ${body}")
-                .to("direct:upsertOrder");
+                .process(offsetCommitTracker::register);
+        if (consumerLanes > 0 && !coalesceEnabled) {
+            consumer.process(this::assignLane)
+                    .toD(laneUri("${header." + ORDER_LANE + "}"));
+        } else {
+            consumer.to("direct:processOrder");
+        }
+
+        // Each lane has a single consumer, so orders with the same key keep their order
+        // while different orders are upserted concurrently; a full lane blocks the Kafka consumer
+        for (int lane = 0; lane < consumerLanes; lane++) {
+            from(laneUri(String.valueOf(lane)) + "&concurrentConsumers=1")
+                    .routeId("orderLaneV2-" + lane)
+                    .process(orderMetrics.lap("lane-queue"))
+                    .to(coalesceEnabled ? "direct:admitOrder" : "direct:processOrder");
+        }
 
-        // SELECT all pending orders
+        // Deserialise and validate an order, then hand it to the coalescing window or the upsert
+        from("direct:processOrder")
+                .routeId("processOrderV2")
+                .to("direct:decodeOrder")
+                .to(coalesceEnabled ? "direct:coalesceOrder" : "direct:admitOrder");
+
+        RouteDefinition decodeOrder = from("direct:decodeOrder")
+                .routeId("decodeOrderV2");
+        if (binaryWireFormat()) {
+            decodeOrder.unmarshal(orderBinaryDataFormat);
+        } else if (fastDecoder()) {
+            decodeOrder.unmarshal(orderJsonDataFormat);
+        } else {
+            decodeOrder.unmarshal().json(JsonLibrary.Jackson, OrderModel.class);
+        }
+        decodeOrder
+                .process(orderMetrics.lap("unmarshal"))
+                .process(orderModelValidator::validate)
+                .process(orderMetrics.lap("validate"));
+
+        // Collapse bursts of one order into its latest event; every window closes together on a
+        // fixed interval (or early once an order piles up max-events), so the added latency is bounded
+        if (coalesceEnabled) {
+            AggregateDefinition window = from("direct:coalesceOrder")
+                    .routeId("coalesceOrderV2")
+                    .aggregate(simple("${body.id}"), orderCoalescer)
+                        .completionInterval(coalesceWindowMs)
+                        .completionSize(coalesceMaxEvents)
+                        .forceCompletionOnStop()
+                        .process(orderMetrics.lap("coalesce"));
+            if (consumerLanes > 0) {
+                window.process(this::assignLane)
+                        .toD(laneUri("${header." + ORDER_LANE + "}"));
+            } else {
+                window.to("direct:admitOrder");
+            }
+        }
+
+        // Drop stale and unchanged orders, upsert the rest. A retried record carrying unpublished changes
+        // is upserted on its own, so its changes are published whether or not the MERGE writes again.
+        from("direct:admitOrder")
+                .routeId("admitOrderV2")
+                .choice()
+                    .when(this::needsUpsert)
+                        .process(orderMetrics.lap("filter"))
+                        .choice()
+                            .when(exchange -> batching && !orderChangeFeed.hasUnpublished(exchange))
+                                .to("direct:upsertOrderBatch")
+                            .otherwise()
+                                .to("direct:upsertOrder")
+                        .end()
+                    .endChoice()
+                    .otherwise()
+                        .process(orderMetrics.lap("filter"))
+                        .process(offsetCommitTracker::complete)
+                .end();
+
+        // Stream all pending orders, one keyset page in memory at a time
         from("timer:fetchOrders?repeatCount=1")
                 .autoStartup(false)
-                .to("sql:" + SELECT_PENDING_ORDERS)
-                .log("Fetched pending orders: ${body}");
+                .routeId("fetchOrdersV2")
+                .process(exchange -> exchange.getIn().setBody(orderScanner.scan("PENDING")))
+                .split(body()).streaming()
+                    .log("Fetched pending order: ${body}")
+                .end();
 
-        // UPSERT order using MERGE statement
+        // UPSERT order using MERGE statement, a failure goes through the handlers above
         from("direct:upsertOrder")
                 .routeId("upsertOrderV2")
                 .autoStartup(true)
-                .process(this::prepareUpsertParameters)
-                .to("sql:" + MERGE_SQL)
-                .log("Upsert operation completed for order ID: ${exchangeProperty.orderId}");
+                .process(this::upsertOrder)
+                .log("Upsert operation completed for order ID: ${exchangeProperty.orderId}")
+                .filter(exchangeProperty(OrderChangeFeed.ORDER_CHANGES).isNotNull())
+                    .to("direct:publishOrderChanges")
+                .end()
+                .process(offsetCommitTracker::complete);
+
+        // UPSERT orders in JDBC batches (or bulk staged chunks), completed by size or linger time
+        from("direct:upsertOrderBatch")
+                .routeId("upsertOrderBatchV2")
+                .autoStartup(true)
+                .aggregate(constant(true), new GroupedExchangeAggregationStrategy())
+                    // Up to order.upsert.batch.max-size, shrunk by the backpressure controller while the database is behind
+                    .completionSize(method(orderBackpressure, "batchSize"))
+                    .completionTimeout(batchMaxLingerMs)
+                    .process(this::prepareBatch)
+                    .to(stagedBatches ? "direct:writeOrderBatchStaged" : "direct:writeOrderBatch")
+                .end();
+
+        // Write a prepared batch, replaying it per record if that fails, then acknowledge all its records
+        for (boolean staged : new boolean[]{false, true}) {
+            from(staged ? "direct:writeOrderBatchStaged" : "direct:writeOrderBatch")
+                    .routeId(staged ? "writeOrderBatchStagedV2" : "writeOrderBatchV2")
+                    .autoStartup(true)
+                    .doTry()
+                        .to(staged ? "direct:upsertOrderBulk" : "direct:upsertOrderJdbcBatch")
+                        .log("Batch upsert completed for ${exchangeProperty.batchSize} orders")
+                    .doCatch(Exception.class)
+                        .log(LoggingLevel.WARN, "Batch upsert of ${exchangeProperty.batchSize} orders failed, " +
+                                "falling back to per-record upserts: ${exception.message}")
+                        .process(this::invalidateBatchFingerprints)
+                        .to("direct:upsertOrderEach")
+                    .end()
+                    // The batch is committed by now, so a failed publish cannot be retried through the upsert:
+                    // each changed order goes to its retry topic carrying the change instead
+                    .doTry()
+                        .filter(exchangeProperty(OrderChangeFeed.ORDER_CHANGES).isNotNull())
+                            .to("direct:publishOrderChanges")
+                        .endDoTry()
+                    .doCatch(Exception.class)
+                        .log(LoggingLevel.ERROR, "Publishing the changes of ${exchangeProperty.batchSize} orders failed, " +
+                                "retrying them with their orders: ${exception.message}")
+                        .to("direct:retryUnpublishedChanges")
+                    .end()
+                    .process(this::completeBatch);
+        }
+
+        // Catch-up consumer for replays: large polls, the latest state per order, bulk writes.
+        // Shares the consumer group with the streaming consumer, OrderCatchUpController runs one at a time.
+        if (orderCatchUp.isEnabled()) {
+            from(consumerUri()
+                    + "&maxPollRecords=" + catchUpMaxPollRecords
+                    + "&fetchMinBytes=" + catchUpFetchMinBytes)
+                    .routeId(OrderCatchUpController.CATCH_UP_ROUTE)
+                    .autoStartup(orderCatchUp.startsInCatchUp())
+                    .process(orderMetrics::received)
+                    .process(offsetCommitTracker::register)
+                    .process(exchange -> orderCatchUp.replayed())
+                    .to("direct:decodeOrder")
+                    .choice()
+                        .when(this::needsUpsert)
+                            .to("direct:catchUpBatch")
+                        .otherwise()
+                            .process(offsetCommitTracker::complete)
+                    .end();
+
+            from("direct:catchUpBatch")
+                    .routeId("catchUpBatchV2")
+                    .aggregate(constant(true), new OrderCatchUpAggregation(orderMetrics))
+                        .completionSize(catchUpBatchSize)
+                        .completionTimeout(catchUpMaxLingerMs)
+                        .forceCompletionOnStop()
+                        .to("direct:writeOrderBatchStaged")
+                    .end();
+        }
+
+        // MERGE the batch as one JDBC batch of the prepared upsert statement. Without an error handler
+        // of its own a failure reaches the doTry of the caller, which falls back to per-record upserts.
+        from("direct:upsertOrderJdbcBatch")
+                .routeId("upsertOrderJdbcBatchV2")
+                .autoStartup(true)
+                .errorHandler(noErrorHandler())
+                .process(this::writeJdbcBatch);
+
+        // Bulk copy the batch into a staging table and MERGE it into [Orders] in one statement
+        from("direct:upsertOrderBulk")
+                .routeId("upsertOrderBulkV2")
+                .autoStartup(true)
+                .errorHandler(noErrorHandler())
+                .process(this::writeBulk);
+
+        // Replay a failed batch one order at a time so a bad row only fails itself;
+        // a failing order goes through the handlers above to its retry topic
+        from("direct:upsertOrderEach")
+                .routeId("upsertOrderEachV2")
+                .autoStartup(true)
+                .split(exchangeProperty(BATCH_RECORDS))
+                    // Each order goes on with the retry attempt and origin of its own record
+                    .process(OrderBatchRecord::restoreBody)
+                    // Changes the failed batch committed are published once, by the batch
+                    .removeProperty(OrderChangeFeed.ORDER_CHANGES)
+                    .to("direct:upsertOrder")
+                .end();
+
+        // Publish the inserts and updates of an upsert to the change feed, before its offsets may be committed.
+        // A failure is left to the caller, which retries the record or reports the batch.
+        from("direct:publishOrderChanges")
+                .routeId("publishOrderChangesV2")
+                .autoStartup(true)
+                .errorHandler(noErrorHandler())
+                .split(exchangeProperty(OrderChangeFeed.ORDER_CHANGES))
+                    .process(orderChangeFeed::toRecord)
+                    .to(orderChangeFeed.endpointUri())
+                .end();
+
+        // Send the order of every change a batch wrote but could not publish to its retry topic, carrying the change
+        from("direct:retryUnpublishedChanges")
+                .routeId("retryUnpublishedChangesV2")
+                .split(exchangeProperty(OrderChangeFeed.ORDER_CHANGES))
+                    .process(this::unpublishedOrder)
+                    .to("direct:retryOrder")
+                .end();
+
+        // Republish a failed record to the retry topic of its next attempt, or the dead-letter topic
+        from("direct:retryOrder")
+                .routeId("retryOrderV2")
+                .process(orderChangeFeed::holdUnpublished)
+                .process(orderRetryPolicy::prepare)
+                .filter(exchangeProperty(OrderRetryPolicy.RETRY_URI).isNotNull())
+                    .toD("${exchangeProperty." + OrderRetryPolicy.RETRY_URI + "}")
+                .end();
+
+        // One consumer per retry topic runs the pipeline again once the attempt's delay is up;
+        // a record failing again moves on to the next retry topic through the handlers above
+        if (orderRetryPolicy.isEnabled()) {
+            for (int attempt = 1; attempt <= orderRetryPolicy.attempts(); attempt++) {
+                from(consumerUri(orderRetryPolicy.retryTopic(attempt), groupId + "-retry", manualCommit))
+                        .routeId("orderRetryV2-" + attempt)
+                        .process(orderRetryPolicy::awaitDue)
+                        .process(orderMetrics::received)
+                        .process(offsetCommitTracker::register)
+                        .log("Retrying order record ${header[kafka.KEY]}, attempt ${header." + OrderRetryPolicy.ATTEMPT_HEADER + "}")
+                        .to("direct:processOrder");
+            }
+        }
+
+        // Adapt batch sizes and suspend the order consumer while the database pool is saturated
+        from("timer:orderBackpressure?period={{order.backpressure.interval-ms:1000}}")
+                .routeId("orderBackpressureV2")
+                .process(exchange -> orderBackpressure.evaluate());
+
+        // Publish the consumer group lag per partition
+        from("timer:consumerLag?period={{order.metrics.lag-interval-ms:10000}}")
+                .routeId("consumerLagV2")
+                .process(exchange -> consumerLagMonitor.refresh())
+                .process(exchange -> orderCatchUp.evaluate());
     }
 
     /**
      * Creates a random order for testing purposes
      */
     private void createRandomOrder(org.apache.camel.Exchange exchange) {
-        Faker faker = new Faker(new Locale("en-NZ"));
         String[] possibleStatus = {"APPROVED", "CANCELLED", "DONE", "DRAFT"};
 
         OrderModel orderEvent = OrderModel.builder()
@@ -114,39 +446,306 @@ public class OrderRouteV2 extends RouteBuilder {
     }
 
     /**
-     * Transforms OrderModel to OrderEntity
+     * Seda endpoint of a worker lane, bounded so the backlog cannot grow past the queue depth
      */
-    private void transformOrderModelToEntity(org.apache.camel.Exchange exchange) {
-        OrderModel input = exchange.getMessage().getBody(OrderModel.class);
-        
-        OrderEntity output = OrderEntity.builder()
-                .id(input.getId())
-                .name(input.getName())
-                .description(input.getDescription())
-                .effectiveDate(input.getEffectiveDate().toLocalDate())
-                .status(input.getStatus().name())
-                .build();
+    private String laneUri(String lane) {
+        return "seda:orderLane-" + lane + "?size=" + laneQueueDepth + "&blockWhenFull=true";
+    }
+
+    /**
+     * Picks the worker lane from the Kafka key (the order id), so one order always lands on the same lane
+     */
+    private void assignLane(Exchange exchange) {
+        Object key = exchange.getIn().getHeader(KafkaConstants.KEY);
+        int lane = key == null ? 0 : Math.floorMod(key.hashCode(), consumerLanes);
+        exchange.getIn().setHeader(ORDER_LANE, lane);
+    }
 
-        exchange.getMessage().setBody(output);
+    /**
+     * Kafka consumer endpoint; with manual commit the offsets are committed by the
+     * {@link OffsetCommitTracker} once the database writes below them are done
+     */
+    private String consumerUri() {
+        return consumerUri(topicName, groupId, manualCommit);
+    }
+
+    private String consumerUri(String topic, String group, boolean manualCommit) {
+        String uri = String.format("kafka:%s?brokers=%s&groupId=%s", topic, brokerUrl, group);
+        if (binaryWireFormat() || fastDecoder()) {
+            uri += "&valueDeserializer=org.apache.kafka.common.serialization.ByteArrayDeserializer";
+        }
+        if (manualCommit) {
+            uri += "&autoCommitEnable=false"
+                    + "&allowManualCommit=true"
+                    + "&kafkaManualCommitFactory=#class:org.apache.camel.component.kafka.consumer.DefaultKafkaManualAsyncCommitFactory";
+        }
+        return uri;
+    }
+
+    /**
+     * The fast decoder reads the raw Kafka bytes with {@link OrderJsonDataFormat} instead of
+     * going through a String and the generic Camel Jackson data format
+     */
+    private boolean fastDecoder() {
+        return "fast".equalsIgnoreCase(consumerDecoder);
     }
 
     /**
-     * Prepares parameters for the MERGE SQL statement
+     * Orders travel as {@link OrderBinaryDataFormat} instead of JSON; producers and consumers
+     * of the topic must agree on the format
      */
-    private void prepareUpsertParameters(org.apache.camel.Exchange exchange) {
-        OrderEntity order = exchange.getIn().getBody(OrderEntity.class);
-        
+    private boolean binaryWireFormat() {
+        return "binary".equalsIgnoreCase(wireFormat);
+    }
+
+    /**
+     * An order is upserted unless it is stale or repeats the last written state
+     */
+    private boolean needsUpsert(Exchange exchange) {
+        return isCurrentVersion(exchange) && hasPendingChanges(exchange);
+    }
+
+    /**
+     * Drops events older than the highest version already seen for the order
+     */
+    private boolean isCurrentVersion(Exchange exchange) {
+        OrderModel order = exchange.getIn().getBody(OrderModel.class);
+        if (orderVersionGate.admit(order.getId(), order.getVersion())) {
+            return true;
+        }
+        log.debug("Order ID {} version {} is stale, dropping event", order.getId(), order.getVersion());
+        orderMetrics.count(UpsertOutcome.STALE);
+        return false;
+    }
+
+    /**
+     * Checks the order against the fingerprint cache, false for a no-op event. A record carrying
+     * unpublished changes always goes on, the changes are published by its upsert.
+     */
+    private boolean hasPendingChanges(Exchange exchange) {
+        OrderModel order = exchange.getIn().getBody(OrderModel.class);
+        if (orderFingerprintCache.admit(order.getId(), order.businessFingerprint(), order.getVersion())
+                || orderChangeFeed.hasUnpublished(exchange)) {
+            return true;
+        }
+        log.debug("Order ID {} is unchanged, skipping upsert", order.getId());
+        orderMetrics.count(UpsertOutcome.UNCHANGED);
+        return false;
+    }
+
+    /**
+     * Forgets the fingerprint of an order whose upsert failed
+     */
+    private void invalidateFingerprint(Exchange exchange) {
+        Integer orderId = exchange.getProperty("orderId", Integer.class);
+        if (orderId != null) {
+            orderFingerprintCache.invalidate(orderId);
+        }
+    }
+
+    /**
+     * Forgets the fingerprints of every order in a failed batch before it is replayed
+     */
+    private void invalidateBatchFingerprints(Exchange exchange) {
+        @SuppressWarnings("unchecked")
+        List<OrderModel> orders = exchange.getProperty(BATCH_ORDERS, List.class);
+        for (OrderModel order : orders) {
+            orderFingerprintCache.invalidate(order.getId());
+        }
+    }
+
+    /**
+     * Upserts the order with the MERGE statement, on the shard of its id. Changes an earlier attempt
+     * wrote but could not publish are published again, ahead of any change this write made.
+     */
+    private void upsertOrder(Exchange exchange) throws Exception {
+        OrderModel order = exchange.getIn().getBody(OrderModel.class);
+
         // Store order ID for logging
         exchange.setProperty("orderId", order.getId());
-        
-        // Prepare SQL parameters
-        Map<String, Object> params = new HashMap<>();
-        params.put("id", order.getId());
-        params.put("name", order.getName());
-        params.put("description", order.getDescription());
-        params.put("effectiveDate", order.getEffectiveDate());
-        params.put("status", order.getStatus());
-        
-        exchange.getIn().setBody(params);
-    }
-}
\ No newline at end of file
+
+        List<OrderChange> changes = new ArrayList<>(orderChangeFeed.unpublished(exchange));
+        OrderChange change = orderMetrics.time("upsert", () -> orderWriter.upsert(order));
+        if (change == null) {
+            orderMetrics.count(UpsertOutcome.UNCHANGED);
+            exchange.getIn().setHeader(SqlConstants.SQL_UPDATE_COUNT, 0);
+        } else {
+            written(change);
+            changes.add(change);
+            exchange.getIn().setHeader(SqlConstants.SQL_UPDATE_COUNT, 1);
+        }
+        orderChangeFeed.collect(exchange, changes);
+    }
+
+    /**
+     * Turns a split change of a batch whose publish failed back into its order, to be retried with the change
+     */
+    private void unpublishedOrder(Exchange exchange) {
+        OrderChange change = exchange.getIn().getBody(OrderChange.class);
+        @SuppressWarnings("unchecked")
+        List<OrderBatchRecord> records = exchange.getProperty(BATCH_RECORDS, List.class);
+        OrderBatchRecord latest = null;
+        for (OrderBatchRecord record : records) {
+            OrderModel order = record.order();
+            if (order.getId() == change.getId() && (latest == null || order.getVersion() >= latest.order().getVersion())) {
+                latest = record;
+            }
+        }
+        latest.restore(exchange);
+        exchange.setProperty(OrderChangeFeed.ORDER_CHANGES, Collections.singletonList(change));
+    }
+
+    /**
+     * Collects the orders of an aggregated batch, keeping them around for the per-record fallback
+     */
+    private void prepareBatch(Exchange exchange) {
+        @SuppressWarnings("unchecked")
+        List<Exchange> grouped = exchange.getIn().getBody(List.class);
+
+        List<OrderModel> orders = new ArrayList<>(grouped.size());
+        List<OrderBatchRecord> records = new ArrayList<>(grouped.size());
+        List<OffsetCommitTracker.Ticket> tickets = new ArrayList<>(grouped.size());
+        for (Exchange each : grouped) {
+            OrderBatchRecord record = OrderBatchRecord.of(each);
+            records.add(record);
+            orders.add(record.order());
+            OffsetCommitTracker.Ticket ticket = each.getProperty(OffsetCommitTracker.TICKET, OffsetCommitTracker.Ticket.class);
+            if (ticket != null) {
+                tickets.add(ticket);
+            }
+        }
+
+        exchange.setProperty(BATCH_ORDERS, orders);
+        exchange.setProperty(BATCH_RECORDS, records);
+        exchange.setProperty(BATCH_TICKETS, tickets);
+        exchange.setProperty("batchSize", orders.size());
+        // The aggregated exchange must not complete the ticket it inherited from the first order
+        exchange.removeProperty(OffsetCommitTracker.TICKET);
+        exchange.getIn().setBody(orders);
+    }
+
+    /**
+     * Marks every record of a batch as done once it was written or its failures were handled
+     */
+    private void completeBatch(Exchange exchange) {
+        @SuppressWarnings("unchecked")
+        List<OffsetCommitTracker.Ticket> tickets = exchange.getProperty(BATCH_TICKETS, List.class);
+        for (OffsetCommitTracker.Ticket ticket : tickets) {
+            offsetCommitTracker.complete(ticket);
+        }
+    }
+
+    /**
+     * Writes the orders of an aggregated batch as one JDBC batch per shard
+     */
+    private void writeJdbcBatch(Exchange exchange) {
+        @SuppressWarnings("unchecked")
+        List<OrderModel> orders = exchange.getProperty(BATCH_ORDERS, List.class);
+        int written;
+        try {
+            written = orderMetrics.time("batch-upsert",
+                    () -> orderWriter.upsertAll(orders, order -> orderStatusIndex.update(order.getId(), status(order))));
+        } finally {
+            // Also when a shard failed, the others committed and their replay finds the rows unchanged
+            invalidateNearCache(orders);
+        }
+        countBatch(orders.size(), written);
+        exchange.getIn().setHeader(SqlConstants.SQL_UPDATE_COUNT, written);
+    }
+
+    /**
+     * Writes the orders of an aggregated batch through the bulk staging engine
+     */
+    private void writeBulk(Exchange exchange) throws Exception {
+        @SuppressWarnings("unchecked")
+        List<OrderModel> orders = exchange.getProperty(BATCH_ORDERS, List.class);
+        boolean reportChanges = orderChangeFeed.isEnabled() || orderStatusIndex.isEnabled();
+        List<OrderChange> changes = reportChanges ? new ArrayList<>(orders.size()) : null;
+        long started = System.nanoTime();
+        int written;
+        try {
+            written = orderWriter.write(orders, changes == null ? null : changes::add);
+        } catch (Exception e) {
+            // The shards that committed reported their changes; the replay per record finds those rows
+            // unchanged, so their views and change records are only kept current here (the replay counts them)
+            if (changes == null || changes.isEmpty()) {
+                invalidateNearCache(orders);
+                indexStoredStatuses(orders);
+            } else {
+                changes.forEach(this::refreshViews);
+                orderChangeFeed.collect(exchange, changes);
+            }
+            throw e;
+        }
+        orderMetrics.record("batch-upsert", System.nanoTime() - started);
+        if (changes == null || changes.isEmpty()) {
+            countBatch(orders.size(), written);
+            invalidateNearCache(orders);
+            if (written > 0) {
+                indexStoredStatuses(orders);
+            }
+        } else {
+            // The MERGE OUTPUT tells inserts from updates, and which rows were written
+            for (OrderChange change : changes) {
+                written(change);
+            }
+            orderMetrics.count(UpsertOutcome.UNCHANGED, orders.size() - written);
+            orderChangeFeed.collect(exchange, changes);
+        }
+        exchange.getIn().setHeader(SqlConstants.SQL_UPDATE_COUNT, written);
+    }
+
+    /**
+     * Counts a row the upsert wrote and keeps the in-memory views of [Orders] current
+     */
+    private void written(OrderChange change) {
+        orderMetrics.count(change.outcome());
+        refreshViews(change);
+    }
+
+    /**
+     * Keeps the in-memory views of [Orders] current with a row the upsert wrote
+     */
+    private void refreshViews(OrderChange change) {
+        orderNearCache.put(change);
+        orderStatusIndex.update(change.getId(), change.getStatus());
+    }
+
+    private static String status(OrderModel order) {
+        return order.getStatus() == null ? null : order.getStatus().name();
+    }
+
+    /**
+     * Forgets the orders of a batch whose per-row outcome is unknown, the next read loads them again
+     */
+    private void invalidateNearCache(List<OrderModel> orders) {
+        for (OrderModel order : orders) {
+            orderNearCache.invalidate(order.getId());
+        }
+    }
+
+    /**
+     * Indexes the statuses stored for the orders of a batch whose write did not report the rows it wrote
+     * (no MERGE OUTPUT): the statuses of the batch itself may be ones the MERGE rejected as stale
+     */
+    private void indexStoredStatuses(List<OrderModel> orders) {
+        if (!orderStatusIndex.isEnabled()) {
+            return;
+        }
+        Set<Integer> ids = new LinkedHashSet<>(orders.size() * 2);
+        for (OrderModel order : orders) {
+            ids.add(order.getId());
+        }
+        for (OrderEntity row : orderScanner.findByIds(ids)) {
+            orderStatusIndex.update(row.getId(), row.getStatus());
+        }
+    }
+
+    /**
+     * Counts the orders of a written batch, those the MERGE did not touch as unchanged
+     */
+    private void countBatch(int orders, int written) {
+        orderMetrics.count(UpsertOutcome.UPSERTED, written);
+        orderMetrics.count(UpsertOutcome.UNCHANGED, orders - written);
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Streams the orders of one status with keyset pagination on {@code id}: each page seeks past
+ * the last id of the previous one ({@code WHERE id > ? ORDER BY id}), so every page costs the
+ * same however deep the scan is and at most one page is held in memory.
+ * <p>
+ * Replaces {@code SELECT *} with {@code outputClass=OrderEntity}, which loaded the whole result
+ * into one list through reflective bean mapping.
+ * <p>
+ * With several {@link OrderShards} every page is queried on each shard and merged by id, lookups
+ * by id go to the shard of the id only.
+ */
+@Component
+public class OrderScanner {
+
+    static final String PAGE_SQL =
+            "SELECT id, name, description, effective_date, status, version FROM [Orders] " +
+            "WHERE status = ? AND id > ? ORDER BY id " +
+            "OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+
+    static final String BY_ID_SQL =
+            "SELECT id, name, description, effective_date, status, version FROM [Orders] WHERE id = ?";
+
+    static final String BY_IDS_SQL =
+            "SELECT id, name, description, effective_date, status, version FROM [Orders] WHERE id IN (%s)";
+
+    // Ids per IN list, well below the 2100 parameters SQL Server takes in one statement
+    private static final int MAX_IN_LIST = 1000;
+
+    // Just enough of every row to rebuild the in-memory status index
+    static final String STATUS_PAGE_SQL =
+            "SELECT id, status FROM [Orders] WHERE id > ? ORDER BY id OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+
+    // Maps by column index, in the projection order of PAGE_SQL
+    static final RowMapper<OrderEntity> ROW_MAPPER = OrderScanner::mapRow;
+
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+    private final OrderColumnTypes columnTypes;
+    private final int pageSize;
+
+    @Autowired
+    public OrderScanner(OrderShards orderShards,
+                        OrderColumnTypes columnTypes,
+                        @Value("${order.scan.page-size:1000}") int pageSize,
+                        @Value("${order.scan.fetch-size:500}") int fetchSize) {
+        this(orderShards.dataSources(), columnTypes, pageSize, fetchSize);
+    }
+
+    public OrderScanner(DataSource dataSource, OrderColumnTypes columnTypes, int pageSize, int fetchSize) {
+        this(Collections.singletonList(dataSource), columnTypes, pageSize, fetchSize);
+    }
+
+    /**
+     * Scans orders spread over the databases in shard order, see {@link OrderShards}
+     */
+    OrderScanner(List<DataSource> dataSources, OrderColumnTypes columnTypes, int pageSize, int fetchSize) {
+        for (DataSource dataSource : dataSources) {
+            // A template of its own, the fetch size must not leak into the writers' statements
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.setFetchSize(fetchSize);
+            shards.add(jdbcTemplate);
+        }
+        this.columnTypes = columnTypes;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Lazily pages through the orders with the given status in id order; a page is only queried
+     * once the previous one is consumed, so the iterator suits a streaming split
+     */
+    public Iterator<OrderEntity> scan(String status) {
+        return new Iterator<OrderEntity>() {
+            private List<OrderEntity> page;
+            private int index;
+            private int lastId = Integer.MIN_VALUE;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (page != null && index < page.size()) {
+                    return true;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                page = page(status, lastId);
+                index = 0;
+                exhausted = page.size() < pageSize;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public OrderEntity next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                OrderEntity order = page.get(index++);
+                lastId = order.getId();
+                return order;
+            }
+        };
+    }
+
+    /**
+     * One page of orders with the status, with ids above {@code afterId}
+     */
+    public List<OrderEntity> page(String status, int afterId) {
+        return page(status, afterId, pageSize);
+    }
+
+    public List<OrderEntity> page(String status, int afterId, int limit) {
+        // The status must arrive as the column's own type, or the (status, id) index cannot be seeked
+        return fanOut(template -> template.query(PAGE_SQL, ps -> bindPage(ps, columnTypes, status, afterId, limit), ROW_MAPPER), limit);
+    }
+
+    /**
+     * One page of every order's id and status (the other fields left empty), with ids above {@code afterId}
+     */
+    public List<OrderEntity> statusPage(int afterId) {
+        return fanOut(template -> template.query(STATUS_PAGE_SQL,
+                (rs, rowNum) -> OrderEntity.builder().id(rs.getInt(1)).status(rs.getString(2)).build(),
+                afterId, pageSize), pageSize);
+    }
+
+    /**
+     * The order with the id, or null if there is none
+     */
+    public OrderEntity findById(int id) {
+        JdbcTemplate shard = shards.get(OrderShards.shardOf(id, shards.size()));
+        List<OrderEntity> rows = shard.query(BY_ID_SQL, ROW_MAPPER, id);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * The orders with the ids that exist, in id order; one query per shard of the ids
+     */
+    public List<OrderEntity> findByIds(Collection<Integer> ids) {
+        Map<Integer, List<Integer>> idsByShard = new TreeMap<>();
+        for (int id : ids) {
+            idsByShard.computeIfAbsent(OrderShards.shardOf(id, shards.size()), shard -> new ArrayList<>()).add(id);
+        }
+        List<OrderEntity> rows = new ArrayList<>(ids.size());
+        idsByShard.forEach((shard, shardIds) -> {
+            for (int from = 0; from < shardIds.size(); from += MAX_IN_LIST) {
+                List<Integer> chunk = shardIds.subList(from, Math.min(from + MAX_IN_LIST, shardIds.size()));
+                String sql = String.format(BY_IDS_SQL, String.join(", ", Collections.nCopies(chunk.size(), "?")));
+                rows.addAll(shards.get(shard).query(sql, ROW_MAPPER, chunk.toArray()));
+            }
+        });
+        rows.sort(Comparator.comparingInt(OrderEntity::getId));
+        return rows;
+    }
+
+    /**
+     * Runs a page query on every shard and merges the pages by id. Each shard returns its lowest
+     * ids above the keyset, so the lowest {@code limit} of all of them are the page of the whole table.
+     */
+    private List<OrderEntity> fanOut(Function<JdbcTemplate, List<OrderEntity>> query, int limit) {
+        if (shards.size() == 1) {
+            return query.apply(shards.get(0));
+        }
+        List<OrderEntity> merged = new ArrayList<>();
+        for (JdbcTemplate shard : shards) {
+            merged.addAll(query.apply(shard));
+        }
+        merged.sort(Comparator.comparingInt(OrderEntity::getId));
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    /**
+     * Binds the parameters of {@link #PAGE_SQL}
+     */
+    static void bindPage(PreparedStatement ps, OrderColumnTypes columnTypes, String status, int afterId, int limit)
+            throws SQLException {
+        columnTypes.setString(ps, 1, "status", status);
+        ps.setInt(2, afterId);
+        ps.setInt(3, limit);
+    }
+
+    private static OrderEntity mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Date effectiveDate = rs.getDate(4);
+        return OrderEntity.builder()
+                .id(rs.getInt(1))
+                .name(rs.getString(2))
+                .description(rs.getString(3))
+                .effectiveDate(effectiveDate == null ? null : effectiveDate.toLocalDate())
+                .status(rs.getString(5))
+                .version(rs.getInt(6))
+                .build();
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * The databases [Orders] is spread over. Shard 0 is the primary datasource ({@code spring.datasource.*}),
+ * every URL of {@code order.shards.urls} adds a shard with a Hikari pool of its own; an order lives
+ * on the shard picked by a stable hash of its id.
+ * <p>
+ * The hash depends on the number of shards only, so adding a shard moves rows between shards;
+ * existing data has to be redistributed before the shard count changes.
+ */
+@Slf4j
+@Component
+public class OrderShards {
+
+    private final List<DataSource> dataSources;
+    private final List<HikariDataSource> ownedPools = new ArrayList<>();
+    private final ExecutorService executor;
+
+    @Autowired
+    public OrderShards(DataSource dataSource,
+                       @Value("${order.shards.urls:}") List<String> urls,
+                       @Value("${order.shards.username:${spring.datasource.username:}}") String username,
+                       @Value("${order.shards.password:${spring.datasource.password:}}") String password,
+                       @Value("${order.shards.pool-size:${spring.datasource.hikari.maximum-pool-size:10}}") int poolSize) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(dataSource);
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("order-shard-" + shards.size());
+            config.setJdbcUrl(url.trim());
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setMaximumPoolSize(poolSize);
+            HikariDataSource pool = new HikariDataSource(config);
+            ownedPools.add(pool);
+            shards.add(pool);
+        }
+        this.dataSources = Collections.unmodifiableList(shards);
+        this.executor = shards.size() > 1 ? Executors.newFixedThreadPool(shards.size(), threads()) : null;
+        log.info("[Orders] spread over {} shard(s)", shards.size());
+    }
+
+    /**
+     * Shards over the given databases, the first one being the primary
+     */
+    OrderShards(List<DataSource> dataSources) {
+        this.dataSources = Collections.unmodifiableList(new ArrayList<>(dataSources));
+        this.executor = dataSources.size() > 1 ? Executors.newFixedThreadPool(dataSources.size(), threads()) : null;
+    }
+
+    public int count() {
+        return dataSources.size();
+    }
+
+    public List<DataSource> dataSources() {
+        return dataSources;
+    }
+
+    /**
+     * The shard holding the order with the id
+     */
+    public int shardOf(int orderId) {
+        return shardOf(orderId, dataSources.size());
+    }
+
+    /**
+     * Stable shard of an order id: the murmur3 finalizer spreads sequential ids evenly
+     */
+    static int shardOf(int orderId, int shards) {
+        int h = orderId;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, shards);
+    }
+
+    /**
+     * Groups orders by shard, keeping their order within each shard
+     */
+    public Map<Integer, List<OrderModel>> partition(List<OrderModel> orders) {
+        Map<Integer, List<OrderModel>> byShard = new TreeMap<>();
+        for (OrderModel order : orders) {
+            byShard.computeIfAbsent(shardOf(order.getId()), shard -> new ArrayList<>()).add(order);
+        }
+        return byShard;
+    }
+
+    /**
+     * Runs the call for every shard with work, in parallel when there is more than one, and
+     * returns the results by shard. Every call is waited for; the first failure is rethrown.
+     */
+    public <T, R> Map<Integer, R> fanOut(Map<Integer, T> work, ShardCall<T, R> call) throws SQLException {
+        return fanOut(work, call, (shard, result) -> { });
+    }
+
+    /**
+     * As {@link #fanOut(Map, ShardCall)}, handing the result of every shard that succeeded to
+     * {@code completed} on the calling thread in shard order. A shard that committed is reported
+     * even when another one failed, before that failure is rethrown.
+     */
+    public <T, R> Map<Integer, R> fanOut(Map<Integer, T> work, ShardCall<T, R> call,
+                                         BiConsumer<Integer, R> completed) throws SQLException {
+        Map<Integer, R> results = new TreeMap<>();
+        Throwable failure = null;
+        if (executor == null || work.size() == 1) {
+            for (Map.Entry<Integer, T> entry : work.entrySet()) {
+                try {
+                    results.put(entry.getKey(), call.call(entry.getKey(), entry.getValue()));
+                } catch (Exception e) {
+                    failure = addFailure(failure, e);
+                }
+            }
+        } else {
+            Map<Integer, Future<R>> futures = new TreeMap<>();
+            work.forEach((shard, shardWork) -> futures.put(shard, executor.submit(() -> call.call(shard, shardWork))));
+            for (Map.Entry<Integer, Future<R>> entry : futures.entrySet()) {
+                try {
+                    results.put(entry.getKey(), entry.getValue().get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while writing to the order shards", e);
+                } catch (ExecutionException e) {
+                    failure = addFailure(failure, e.getCause());
+                }
+            }
+        }
+        results.forEach(completed);
+        if (failure != null) {
+            rethrow(failure);
+        }
+        return results;
+    }
+
+    private static Throwable addFailure(Throwable failure, Throwable next) {
+        if (failure == null) {
+            return next;
+        }
+        failure.addSuppressed(next);
+        return failure;
+    }
+
+    private static void rethrow(Throwable failure) throws SQLException {
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new IllegalStateException(failure);
+    }
+
+    private static ThreadFactory threads() {
+        AtomicInteger next = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "order-shard-writer-" + next.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        ownedPools.forEach(HikariDataSource::close);
+    }
+
+    /**
+     * Work on one shard
+     */
+    @FunctionalInterface
+    public interface ShardCall<T, R> {
+        R call(int shard, T work) throws Exception;
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import com.example.StatusEnum;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of order ids by status, so status queries and counts are answered without
+ * going to [Orders].
+ * <p>
+ * Ids are kept in one compressed {@link RoaringBitmap} per status. The index is rebuilt with a
+ * keyset scan in the background once the application is ready, retried until it completes, and
+ * from then on maintained by the upsert path, which sees every status the consumer writes.
+ * Statuses are indexed as stored, so rows written by other systems (e.g. PENDING) are found and
+ * counted too.
+ * <p>
+ * Consumer updates that land while the rebuild is still scanning win over the scanned rows,
+ * which may have been read before the write.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "order.route.variant", havingValue = "v2", matchIfMissing = true)
+public class OrderStatusIndex {
+
+    private final boolean enabled;
+    private final long retryDelayMs;
+    private final OrderScanner orderScanner;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> gaugedStatuses = ConcurrentHashMap.newKeySet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, RoaringBitmap> idsByStatus = new HashMap<>();
+    // Ids the consumer updated while a rebuild was scanning, guarded by the write lock
+    private final Set<Integer> updatedDuringRebuild = new HashSet<>();
+    private boolean rebuilding;
+    private volatile boolean ready;
+    private volatile Thread rebuilder;
+
+    public OrderStatusIndex(@Value("${order.status-index.enabled:true}") boolean enabled,
+                            @Value("${order.status-index.retry-delay-ms:10000}") long retryDelayMs,
+                            OrderScanner orderScanner,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.retryDelayMs = retryDelayMs;
+        this.orderScanner = orderScanner;
+        this.meterRegistry = meterRegistry;
+        // The consumer's statuses are exported from the start, others once the index sees them
+        for (StatusEnum status : StatusEnum.values()) {
+            registerGauge(status.name());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * True once the startup scan completed; until then the index must not answer queries
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            // Startup neither waits for the scan nor fails with it, queries fall back until it completes
+            Thread thread = new Thread(this::rebuildUntilReady, "order-status-index");
+            thread.setDaemon(true);
+            rebuilder = thread;
+            thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        Thread thread = rebuilder;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Rebuilds until a scan completes, waiting {@code retryDelayMs} after every failed one
+     */
+    void rebuildUntilReady() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                rebuild();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Order status index rebuild failed, retrying in {} ms: {}", retryDelayMs, e.getMessage());
+            }
+            try {
+                Thread.sleep(retryDelayMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replaces the index with a fresh scan of [Orders], one keyset page at a time; the index is
+     * not ready again unless the scan completes
+     */
+    public void rebuild() {
+        long started = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            rebuilding = true;
+            idsByStatus.clear();
+            updatedDuringRebuild.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        int rows = 0;
+        try {
+            int lastId = Integer.MIN_VALUE;
+            List<OrderEntity> page;
+            do {
+                page = orderScanner.statusPage(lastId);
+                if (page.isEmpty()) {
+                    break;
+                }
+                lock.writeLock().lock();
+                try {
+                    for (OrderEntity order : page) {
+                        if (!updatedDuringRebuild.contains(order.getId())) {
+                            add(order.getId(), order.getStatus());
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                rows += page.size();
+                lastId = page.get(page.size() - 1).getId();
+            } while (true);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                rebuilding = false;
+                updatedDuringRebuild.clear();
+                idsByStatus.values().forEach(RoaringBitmap::runOptimize);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        ready = true;
+        log.info("Order status index rebuilt from {} rows in {} ms", rows, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Records the status the upsert path just wrote for the order
+     */
+    public void update(int id, String status) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (RoaringBitmap ids : idsByStatus.values()) {
+                ids.remove(id);
+            }
+            add(id, status);
+            if (rebuilding) {
+                updatedDuringRebuild.add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code limit} ids with the status in ascending order, starting after {@code afterId}
+     */
+    public List<Integer> ids(String status, int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap ids = idsByStatus.get(status);
+            if (ids == null || afterId == Integer.MAX_VALUE) {
+                return new ArrayList<>();
+            }
+            List<Integer> page = new ArrayList<>(Math.min(limit, ids.getCardinality()));
+            PeekableIntIterator it = ids.getIntIterator();
+            it.advanceIfNeeded(afterId + 1);
+            while (it.hasNext() && page.size() < limit) {
+                page.add(it.next());
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int count(String status) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap ids = idsByStatus.get(status);
+            return ids == null ? 0 : ids.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Order count of every status in the index
+     */
+    public Map<String, Integer> counts() {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> counts = new TreeMap<>();
+            idsByStatus.forEach((status, ids) -> {
+                if (!ids.isEmpty()) {
+                    counts.put(status, ids.getCardinality());
+                }
+            });
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(int id, String status) {
+        if (status != null) {
+            idsByStatus.computeIfAbsent(status, this::newStatus).add(id);
+        }
+    }
+
+    private RoaringBitmap newStatus(String status) {
+        registerGauge(status);
+        return new RoaringBitmap();
+    }
+
+    private void registerGauge(String status) {
+        if (gaugedStatuses.add(status)) {
+            Gauge.builder("orders.status.count", this, index -> index.count(status))
+                    .description("Orders per status, from the in-memory status index")
+                    .tag("status", status)
+                    .register(meterRegistry);
+        }
+    }
+}
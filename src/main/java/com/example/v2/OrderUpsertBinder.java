@@ -0,0 +1,154 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Writes orders with the MERGE upsert, binding {@link OrderModel} fields straight to the
+ * positional parameters of the prepared statement.
+ * <p>
+ * Replaces the {@code sql:} endpoint with {@code :#name} placeholders, which needed an
+ * {@code OrderEntity} and a parameter map per message plus a type-converter lookup per value.
+ */
+@Component
+public class OrderUpsertBinder {
+
+    static final String MERGE_SQL =
+            "MERGE INTO [Orders] AS target " +
+            "USING (VALUES (?, ?, ?, ?, ?, ?, ?)) " +
+                "AS source (id, name, description, effective_date, status, row_hash, version) " +
+            "ON target.id = source.id " +
+            "WHEN MATCHED AND (" +
+                "target.version IS NULL OR " +
+                "source.version > target.version OR " +
+                "(source.version = target.version AND (target.row_hash IS NULL OR target.row_hash != source.row_hash))" +
+            ") THEN " +
+                "UPDATE SET " +
+                    "name = source.name, " +
+                    "description = source.description, " +
+                    "effective_date = source.effective_date, " +
+                    "status = source.status, " +
+                    "row_hash = source.row_hash, " +
+                    "version = source.version " +
+            "WHEN NOT MATCHED THEN " +
+                "INSERT (id, name, description, effective_date, status, row_hash, version) " +
+                "VALUES (source.id, source.name, source.description, source.effective_date, source.status, " +
+                        "source.row_hash, source.version);";
+
+    // SQL Server reports whether the MERGE inserted or updated the row, and what it replaced
+    static final String MERGE_OUTPUT_SQL =
+            MERGE_SQL.substring(0, MERGE_SQL.length() - 1) +
+            " OUTPUT $action, deleted.name, deleted.description, deleted.effective_date, deleted.status;";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OrderColumnTypes columnTypes;
+
+    private volatile Boolean sqlServer;
+
+    public OrderUpsertBinder(JdbcTemplate jdbcTemplate, OrderColumnTypes columnTypes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.columnTypes = columnTypes;
+    }
+
+    /**
+     * Upserts one order, returning the change it made or null when the MERGE skipped the row.
+     * On SQL Server the change tells inserts from updates and names the fields that changed.
+     */
+    public OrderChange upsert(OrderModel order) {
+        if (isSqlServer()) {
+            return jdbcTemplate.query(MERGE_OUTPUT_SQL, ps -> bind(ps, order, columnTypes),
+                    (ResultSetExtractor<OrderChange>) rs -> rs.next() ? change(rs, order) : null);
+        }
+        return jdbcTemplate.update(MERGE_SQL, ps -> bind(ps, order, columnTypes)) > 0 ? OrderChange.of(OrderChange.UPSERT, order) : null;
+    }
+
+    /**
+     * Reads a row of {@link #MERGE_OUTPUT_SQL}, or any OUTPUT clause starting with the same columns
+     */
+    static OrderChange change(ResultSet rs, OrderModel order) throws SQLException {
+        return OrderChange.of(rs.getString(1), order,
+                rs.getString(2), rs.getString(3), rs.getObject(4, LocalDate.class), rs.getString(5));
+    }
+
+    /**
+     * Upserts the orders as one JDBC batch, returning the number of rows the MERGE touched
+     */
+    public int upsertAll(List<OrderModel> orders) {
+        return upsertAll(orders, null);
+    }
+
+    /**
+     * Same as {@link #upsertAll(List)}, handing every order the MERGE wrote to {@code written} when given
+     */
+    public int upsertAll(List<OrderModel> orders, Consumer<OrderModel> written) {
+        int[] counts = jdbcTemplate.batchUpdate(MERGE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                bind(ps, orders.get(i), columnTypes);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return orders.size();
+            }
+        });
+
+        int updated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            // Drivers may report SUCCESS_NO_INFO for batched statements
+            int count = counts[i] == Statement.SUCCESS_NO_INFO ? 1 : Math.max(counts[i], 0);
+            if (count > 0 && written != null) {
+                written.accept(orders.get(i));
+            }
+            updated += count;
+        }
+        return updated;
+    }
+
+    boolean isSqlServer() {
+        Boolean detected = sqlServer;
+        if (detected == null) {
+            detected = jdbcTemplate.execute((ConnectionCallback<Boolean>) conn ->
+                    conn.getMetaData().getDatabaseProductName().contains("SQL Server"));
+            sqlServer = detected;
+        }
+        return detected;
+    }
+
+    /**
+     * Binds an order in the parameter order of {@link #MERGE_SQL}
+     */
+    static void bind(PreparedStatement ps, OrderModel order) throws SQLException {
+        bind(ps, order, OrderColumnTypes.DRIVER_DEFAULT);
+    }
+
+    /**
+     * Binds an order in the parameter order of {@link #MERGE_SQL}, strings as the type of their column
+     */
+    static void bind(PreparedStatement ps, OrderModel order, OrderColumnTypes columnTypes) throws SQLException {
+        ps.setInt(1, order.getId());
+        columnTypes.setString(ps, 2, "name", order.getName());
+        columnTypes.setString(ps, 3, "description", order.getDescription());
+        if (order.getEffectiveDate() == null) {
+            ps.setNull(4, Types.DATE);
+        } else {
+            ps.setObject(4, order.getEffectiveDate().toLocalDate(), Types.DATE);
+        }
+        columnTypes.setString(ps, 5, "status", order.getStatus() == null ? null : order.getStatus().name());
+        ps.setLong(6, order.businessFingerprint());
+        ps.setInt(7, order.getVersion());
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.v2;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.camel.Exchange;
+import org.apache.camel.ValidationException;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Thrown by {@link OrderModelValidator} for an order event that breaks one or more constraints,
+ * carrying every violation so the record can be rejected with a structured reason.
+ */
+@Getter
+public class OrderValidationException extends ValidationException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int orderId;
+    private final List<Violation> violations;
+
+    public OrderValidationException(Exchange exchange, int orderId, List<Violation> violations) {
+        super(exchange, "Order ID " + orderId + " is invalid: " + violations.stream()
+                .map(Violation::toString)
+                .collect(Collectors.joining(", ")));
+        this.orderId = orderId;
+        this.violations = violations;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Violation {
+        private final String field;
+        private final String message;
+
+        @Override
+        public String toString() {
+            return field + " " + message;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.v2;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks the highest {@code OrderModel.version} seen per order id so out-of-order or replayed
+ * events can be dropped in the consumer before any JDBC call.
+ * <p>
+ * Bounded like {@link OrderFingerprintCache}; an evicted order is simply admitted again and the
+ * version check in the MERGE keeps the row from going backwards.
+ */
+@Component
+public class OrderVersionGate {
+
+    private final boolean enabled;
+    private final BoundedIntLongMap highestVersions;
+    private final Counter staleEvents;
+
+    public OrderVersionGate(@Value("${order.version-gate.enabled:true}") boolean enabled,
+                            @Value("${order.version-gate.max-entries:1048576}") int maxEntries,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.highestVersions = new BoundedIntLongMap(enabled ? maxEntries : 1);
+        this.staleEvents = Counter.builder("orders.version.stale")
+                .description("Order events dropped because a newer version was already seen")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records the version unless a newer one was already seen for the order.
+     *
+     * @return false for a stale event
+     */
+    public boolean admit(int orderId, int version) {
+        if (!enabled || highestVersions.putIfNotLower(orderId, version)) {
+            return true;
+        }
+        staleEvents.increment();
+        return false;
+    }
+
+    public long staleCount() {
+        return (long) staleEvents.count();
+    }
+}
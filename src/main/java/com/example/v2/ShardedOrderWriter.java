@@ -0,0 +1,115 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Writes orders to the shard of their id ({@link OrderShards}). Batches are split per shard and
+ * the shards written in parallel, each with its own {@link OrderUpsertBinder} and
+ * {@link OrderBulkWriter}; with a single shard this is a plain pass-through.
+ * <p>
+ * Callbacks for written rows run on the calling thread once every shard is done, so callers
+ * may collect them into unsynchronized lists. When a shard fails, the rows of the shards that
+ * committed are still handed over before the failure is rethrown: a replay of the batch finds
+ * them unchanged, so the caller would not learn about them otherwise.
+ */
+@Component
+public class ShardedOrderWriter {
+
+    private final OrderShards shards;
+    private final List<OrderUpsertBinder> binders = new ArrayList<>();
+    private final List<OrderBulkWriter> bulkWriters = new ArrayList<>();
+
+    public ShardedOrderWriter(OrderShards shards,
+                              OrderUpsertBinder orderUpsertBinder,
+                              OrderBulkWriter orderBulkWriter,
+                              OrderColumnTypes columnTypes,
+                              @Value("${order.upsert.bulk.insert-rows:200}") int insertRows) {
+        this.shards = shards;
+        // Shard 0 is the primary datasource the Spring managed writers already use
+        binders.add(orderUpsertBinder);
+        bulkWriters.add(orderBulkWriter);
+        List<DataSource> dataSources = shards.dataSources();
+        for (int shard = 1; shard < dataSources.size(); shard++) {
+            // The shards share one schema, so the column types of the primary apply to all of them
+            binders.add(new OrderUpsertBinder(new JdbcTemplate(dataSources.get(shard)), columnTypes));
+            bulkWriters.add(new OrderBulkWriter(dataSources.get(shard), insertRows));
+        }
+    }
+
+    /**
+     * Upserts one order on its shard, see {@link OrderUpsertBinder#upsert(OrderModel)}
+     */
+    public OrderChange upsert(OrderModel order) {
+        return binders.get(shards.shardOf(order.getId())).upsert(order);
+    }
+
+    /**
+     * Upserts the orders as one JDBC batch per shard, see {@link OrderUpsertBinder#upsertAll(List, Consumer)};
+     * if a shard fails, the orders the others wrote are handed to {@code written} before it is rethrown
+     */
+    public int upsertAll(List<OrderModel> orders, Consumer<OrderModel> written) {
+        try {
+            return total(shards.fanOut(shards.partition(orders), (shard, shardOrders) -> {
+                List<OrderModel> shardWritten = new ArrayList<>(shardOrders.size());
+                int count = binders.get(shard).upsertAll(shardOrders, shardWritten::add);
+                return new ShardResult<>(count, shardWritten);
+            }, (shard, result) -> result.forward(written)));
+        } catch (SQLException e) {
+            // The JDBC template reports failures as DataAccessException, never as SQLException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes a chunk through the bulk engine of every shard, see {@link OrderBulkWriter#write(List, Consumer)};
+     * if a shard fails, the changes of the others are handed to {@code changes} before it is rethrown
+     */
+    public int write(List<OrderModel> orders, Consumer<OrderChange> changes) throws SQLException {
+        return total(shards.fanOut(shards.partition(orders), (shard, shardOrders) -> {
+            List<OrderChange> shardChanges = new ArrayList<>();
+            int count = bulkWriters.get(shard).write(shardOrders, changes == null ? null : shardChanges::add);
+            return new ShardResult<>(count, shardChanges);
+        }, (shard, result) -> result.forward(changes)));
+    }
+
+    /**
+     * The row count written over all shards
+     */
+    private static <T> int total(Map<Integer, ShardResult<T>> results) {
+        int count = 0;
+        for (ShardResult<T> result : results.values()) {
+            count += result.count;
+        }
+        return count;
+    }
+
+    private static final class ShardResult<T> {
+
+        private final int count;
+        private final List<T> rows;
+
+        ShardResult(int count, List<T> rows) {
+            this.count = count;
+            this.rows = rows;
+        }
+
+        /**
+         * Hands the rows written on the shard to the consumer
+         */
+        void forward(Consumer<T> consumer) {
+            if (consumer != null) {
+                rows.forEach(consumer);
+            }
+        }
+    }
+}
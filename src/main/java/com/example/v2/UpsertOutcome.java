@@ -0,0 +1,27 @@
+package com.example.v2;
+
+/**
+ * What became of an order event, counted by {@link OrderMetrics}
+ */
+public enum UpsertOutcome {
+    // Written as a new row (only known where the database reports the MERGE action)
+    INSERTED,
+    // Written over an existing row (only known where the database reports the MERGE action)
+    UPDATED,
+    // Written, insert or update unknown (JDBC batches, databases without MERGE OUTPUT)
+    UPSERTED,
+    // Same state as the row already written, skipped by the fingerprint cache or the MERGE condition
+    UNCHANGED,
+    // Older than a version already seen
+    STALE,
+    // Superseded by a later event of the same order within the coalescing window
+    COALESCED,
+    // Failed validation
+    REJECTED,
+    // Failed to process or write
+    FAILED;
+
+    String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -7,13 +7,16 @@ import com.github.javafaker.Faker;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.kafka.KafkaConstants;
 import org.apache.camel.model.dataformat.JsonLibrary;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.util.*;
 
-//@Component
+// Alternative upsert strategy, selected with order.route.variant=v3
+@Component("orderRouteV3")
+@ConditionalOnProperty(name = "order.route.variant", havingValue = "v3")
 public class OrderRoute extends RouteBuilder {
 
     @Override
@@ -25,11 +28,6 @@ public class OrderRoute extends RouteBuilder {
                 .process(exchange -> {
                     String[] possibleStatus = {"APPROVED", "CANCELLED", "DONE", "DRAFT"};
 
-                    int randomCount = faker.random().nextInt(5000, 10000);
-                    List<String> randomLengthList = new ArrayList<>();
-                    for (int i = 0; i < randomCount; i++) {
-                        randomLengthList.add(faker.idNumber().valid());
-                    }
                     OrderModel orderEvent = OrderModel.builder()
                             .id((faker.number().numberBetween(0, 5000)))
                             .version(faker.number().numberBetween(0, 5))
@@ -44,13 +42,13 @@ public class OrderRoute extends RouteBuilder {
 
                 .marshal().json(JsonLibrary.Jackson)
                 .log("Body before sending to Kafka ${body}")
-                .to("kafka:order-demo?"
-                        + "brokers=localhost:9092"
+                .to("kafka:{{kafka-topic-name}}?"
+                        + "brokers={{spring.kafka.bootstrap-servers}}"
                         + "&valueSerializer=org.apache.kafka.common.serialization.StringSerializer"
                         + "&keySerializer=org.apache.kafka.common.serialization.StringSerializer");
 
         // Consume data
-        from("kafka:order-demo?brokers=localhost:9092&groupId=my-group")
+        from("kafka:{{kafka-topic-name}}?brokers={{spring.kafka.bootstrap-servers}}&groupId=my-group")
                 .log("got a body ${body}")
                 .unmarshal().json(JsonLibrary.Jackson, OrderModel.class)
                 .to("bean-validator://ValidateModel")
@@ -83,8 +81,8 @@ public class OrderRoute extends RouteBuilder {
                 exchange.getIn().setBody(params);
                 exchange.setProperty("newOrder", newOrder);
             })
-            // First, check if record exists
-            .to("sql:SELECT id, name, description, effective_date, status FROM [Orders] WHERE id = :#id?outputClass=com.example.OrderEntity")
+            // First, check if record exists - only the key and the business-field hash are needed
+            .to("sql:SELECT id, row_hash FROM [Orders] WHERE id = :#id")
             .choice()
                 .when(simple("${body.size()} == 0"))
                     // Record doesn't exist - INSERT
@@ -106,42 +104,24 @@ public class OrderRoute extends RouteBuilder {
                 params.put("description", order.getDescription());
                 params.put("effectiveDate", order.getEffectiveDate());
                 params.put("status", order.getStatus());
+                params.put("rowHash", order.businessFingerprint());
                 exchange.getIn().setBody(params);
             })
-            .to("sql:INSERT INTO [Orders](id, name, description, effective_date, status) " +
-                "VALUES (:#id, :#name, :#description, :#effectiveDate, :#status)")
+            .to("sql:INSERT INTO [Orders](id, name, description, effective_date, status, row_hash) " +
+                "VALUES (:#id, :#name, :#description, :#effectiveDate, :#status, :#rowHash)")
             .log("Inserted new order with ID: ${exchangeProperty.newOrder.id}");
 
         // Check if update is needed and perform update
         from("direct:checkAndUpdateOrder").autoStartup(true)
             .process(exchange -> {
                 @SuppressWarnings("unchecked")
-                List<OrderEntity> existingOrders = exchange.getIn().getBody(List.class);
-                OrderEntity existingOrder = existingOrders.get(0);
+                List<Map<String, Object>> existingOrders = exchange.getIn().getBody(List.class);
+                Number existingHash = (Number) existingOrders.get(0).get("row_hash");
                 OrderEntity newOrder = exchange.getProperty("newOrder", OrderEntity.class);
+                long newHash = newOrder.businessFingerprint();
                 
-                boolean needsUpdate = false;
-                
-                // Check if any of the specified fields have changed
-                if (!Objects.equals(existingOrder.getName(), newOrder.getName())) {
-                    needsUpdate = true;
-                    exchange.getIn().setHeader("nameChanged", true);
-                }
-                
-                if (!Objects.equals(existingOrder.getDescription(), newOrder.getDescription())) {
-                    needsUpdate = true;
-                    exchange.getIn().setHeader("descriptionChanged", true);
-                }
-                
-                if (!Objects.equals(existingOrder.getStatus(), newOrder.getStatus())) {
-                    needsUpdate = true;
-                    exchange.getIn().setHeader("statusChanged", true);
-                }
-                
-                if (!Objects.equals(existingOrder.getEffectiveDate(), newOrder.getEffectiveDate())) {
-                    needsUpdate = true;
-                    exchange.getIn().setHeader("effectiveDateChanged", true);
-                }
+                // A single hash comparison replaces the field-by-field check of the full row
+                boolean needsUpdate = existingHash == null || existingHash.longValue() != newHash;
                 
                 exchange.getIn().setHeader("needsUpdate", needsUpdate);
                 
@@ -152,6 +132,7 @@ public class OrderRoute extends RouteBuilder {
                     params.put("description", newOrder.getDescription());
                     params.put("effectiveDate", newOrder.getEffectiveDate());
                     params.put("status", newOrder.getStatus());
+                    params.put("rowHash", newHash);
                     exchange.getIn().setBody(params);
                 }
             })
@@ -159,7 +140,7 @@ public class OrderRoute extends RouteBuilder {
                 .when(header("needsUpdate").isEqualTo(true))
                     .log("Updating order with ID: ${exchangeProperty.newOrder.id} - Changes detected")
                     .to("sql:UPDATE [Orders] SET name = :#name, description = :#description, " +
-                        "effective_date = :#effectiveDate, status = :#status WHERE id = :#id")
+                        "effective_date = :#effectiveDate, status = :#status, row_hash = :#rowHash WHERE id = :#id")
                     .log("Successfully updated order with ID: ${exchangeProperty.newOrder.id}")
                 .otherwise()
                     .log("No changes detected for order with ID: ${exchangeProperty.newOrder.id}, skipping update")
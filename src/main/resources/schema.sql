@@ -3,5 +3,11 @@ CREATE TABLE [Orders] (
     name VARCHAR(255) NOT NULL,
     description VARCHAR(1000),
     effective_date DATE,
-    status VARCHAR(50)
+    status VARCHAR(50),
+    row_hash BIGINT,
+    version INT
 );
+
+
+-- Keyset scans by status (OrderScanner) seek on this index instead of scanning the table
+CREATE INDEX ix_orders_status_id ON [Orders] (status, id);
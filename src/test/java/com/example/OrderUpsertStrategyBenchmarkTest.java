@@ -0,0 +1,352 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.spi.CamelEvent;
+import org.apache.camel.support.EventNotifierSupport;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * End-to-end comparison of the v1/v2/v3 upsert strategies: the same pre-generated order stream
+ * goes through embedded Kafka into each route variant backed by its own H2 database (MSSQLServer
+ * mode), and the run reports msgs/s, p50/p99 end-to-end latency and JDBC statements issued.
+ * <p>
+ * Skipped unless {@code bench.e2e=true}, e.g.
+ * {@code mvn test -Dtest=OrderUpsertStrategyBenchmarkTest -Dbench.e2e=true -Dbench.messages=5000 -Dbench.mix=50:30:20}.
+ * <ul>
+ *   <li>{@code bench.variants} - variants to run, default {@code v1,v2,v3}</li>
+ *   <li>{@code bench.messages} - measured messages per variant, default 2000</li>
+ *   <li>{@code bench.warmup} - messages sent and awaited before measuring, default 500</li>
+ *   <li>{@code bench.mix} - insert:update:no-op weights, default {@code 50:30:20}</li>
+ *   <li>{@code bench.rate} - send rate in msgs/s, default 0 (as fast as possible, latency then includes the backlog)</li>
+ * </ul>
+ * Latency runs from the Kafka record timestamp to the completion of the consumer exchange, which
+ * is the database write for the synchronous defaults; with V2 batching or lanes enabled it stops
+ * at the hand-off.
+ */
+@EnabledIfSystemProperty(named = "bench.e2e", matches = "true")
+class OrderUpsertStrategyBenchmarkTest {
+
+    private static final int WARMUP_ID_BASE = 1_000_000;
+
+    private static EmbeddedKafkaBroker kafka;
+    private static final List<String> report = new ArrayList<>();
+
+    private final int messages = Integer.getInteger("bench.messages", 2000);
+    private final int warmup = Integer.getInteger("bench.warmup", 500);
+    private final int rate = Integer.getInteger("bench.rate", 0);
+    private final int[] mix = Arrays.stream(System.getProperty("bench.mix", "50:30:20").split(":"))
+            .mapToInt(Integer::parseInt)
+            .toArray();
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @BeforeAll
+    static void startKafka() {
+        kafka = new EmbeddedKafkaBroker(1, false, 1, "orders-bench-v1", "orders-bench-v2", "orders-bench-v3");
+        kafka.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopKafka() {
+        kafka.destroy();
+        System.out.printf("%n%-8s %8s %10s %8s %8s %11s %9s %8s%n",
+                "variant", "msgs", "msgs/s", "p50 ms", "p99 ms", "statements", "stmt/msg", "rows");
+        report.forEach(System.out::println);
+    }
+
+    @Test
+    void compareUpsertStrategies() throws Exception {
+        List<OrderModel> warmupOrders = new ArrayList<>();
+        for (int i = 0; i < warmup; i++) {
+            warmupOrders.add(order(WARMUP_ID_BASE + i, 1, i));
+        }
+        List<OrderModel> orders = orderStream();
+        long distinctIds = orders.stream().mapToInt(OrderModel::getId).distinct().count();
+
+        for (String variant : System.getProperty("bench.variants", "v1,v2,v3").split(",")) {
+            run(variant.trim(), serialize(warmupOrders), serialize(orders), distinctIds);
+        }
+    }
+
+    private void run(String variant, List<Map.Entry<String, String>> warmupPayloads,
+                     List<Map.Entry<String, String>> payloads, long distinctIds) throws Exception {
+        String topic = "orders-bench-" + variant;
+        StatementCounter statements = new StatementCounter();
+        LatencyRecorder latencies = new LatencyRecorder(warmupPayloads.size() + payloads.size());
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(MySpringBootApplication.class)
+                .web(WebApplicationType.NONE)
+                .initializers(ctx -> {
+                    ctx.getBeanFactory().registerSingleton("benchmarkLatencyRecorder", latencies);
+                    ctx.getBeanFactory().addBeanPostProcessor(statements);
+                })
+                .run(variantArguments(variant, topic));
+             KafkaProducer<String, String> producer = producer()) {
+
+            send(producer, topic, warmupPayloads);
+            await().atMost(2, TimeUnit.MINUTES).until(() -> latencies.count() >= warmupPayloads.size());
+            latencies.reset();
+            statements.reset();
+
+            long start = System.nanoTime();
+            send(producer, topic, payloads);
+            await().atMost(5, TimeUnit.MINUTES).until(() -> latencies.count() >= payloads.size());
+            double seconds = (latencies.lastCompletionNanos() - start) / 1e9;
+
+            long rows = context.getBean(JdbcTemplate.class)
+                    .queryForObject("SELECT COUNT(*) FROM [Orders] WHERE id < " + WARMUP_ID_BASE, Long.class);
+            assertEquals(distinctIds, rows, variant + " must end up with one row per order");
+
+            report.add(String.format("%-8s %8d %10.0f %8d %8d %11d %9.2f %8d",
+                    variant, payloads.size(), payloads.size() / seconds,
+                    latencies.percentile(50), latencies.percentile(99),
+                    statements.count(), (double) statements.count() / payloads.size(), rows));
+        }
+    }
+
+    /**
+     * The measured stream: new orders, changed versions of known orders and exact repeats of
+     * the last event of a known order, drawn by the configured weights with a fixed seed
+     */
+    private List<OrderModel> orderStream() {
+        Random random = new Random(42);
+        int total = mix[0] + mix[1] + mix[2];
+        List<OrderModel> latest = new ArrayList<>();
+        List<OrderModel> stream = new ArrayList<>(messages);
+
+        for (int i = 0; i < messages; i++) {
+            int roll = random.nextInt(total);
+            if (latest.isEmpty() || roll < mix[0]) {
+                OrderModel created = order(latest.size() + 1, 1, random.nextInt(1000));
+                latest.add(created);
+                stream.add(created);
+            } else if (roll < mix[0] + mix[1]) {
+                int index = random.nextInt(latest.size());
+                OrderModel current = latest.get(index);
+                OrderModel changed = order(current.getId(), current.getVersion() + 1, random.nextInt(1000));
+                latest.set(index, changed);
+                stream.add(changed);
+            } else {
+                stream.add(latest.get(random.nextInt(latest.size())));
+            }
+        }
+        return stream;
+    }
+
+    private static OrderModel order(int id, int version, int variation) {
+        StatusEnum[] statuses = StatusEnum.values();
+        return OrderModel.builder()
+                .id(id)
+                .version(version)
+                .name("order-" + variation)
+                .description("Benchmark order " + id + " revision " + version + " variation " + variation)
+                .effectiveDate(OffsetDateTime.parse("2024-01-01T00:00:00Z").plusDays(variation))
+                .status(statuses[variation % statuses.length])
+                .build();
+    }
+
+    /**
+     * Pre-serialises the stream as key and JSON payload pairs, so sending is not measured
+     */
+    private List<Map.Entry<String, String>> serialize(List<OrderModel> orders) throws Exception {
+        List<Map.Entry<String, String>> payloads = new ArrayList<>(orders.size());
+        for (OrderModel order : orders) {
+            payloads.add(new AbstractMap.SimpleImmutableEntry<>(String.valueOf(order.getId()),
+                    objectMapper.writeValueAsString(order)));
+        }
+        return payloads;
+    }
+
+    private void send(KafkaProducer<String, String> producer, String topic, List<Map.Entry<String, String>> payloads) {
+        long nanosPerMessage = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < payloads.size(); i++) {
+            Map.Entry<String, String> payload = payloads.get(i);
+            producer.send(new ProducerRecord<>(topic, payload.getKey(), payload.getValue()));
+            if (nanosPerMessage > 0) {
+                long ahead = start + (i + 1) * nanosPerMessage - System.nanoTime();
+                if (ahead > 0) {
+                    LockSupport.parkNanos(ahead);
+                }
+            }
+        }
+        producer.flush();
+    }
+
+    private static KafkaProducer<String, String> producer() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafka.getBrokersAsString());
+        config.put(ProducerConfig.LINGER_MS_CONFIG, 1);
+        return new KafkaProducer<>(config, new StringSerializer(), new StringSerializer());
+    }
+
+    /**
+     * Settings of a variant as command line arguments, which take precedence over application.properties
+     * (default properties of the builder would not)
+     */
+    private static String[] variantArguments(String variant, String topic) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("order.route.variant", variant);
+        properties.put("kafka-topic-name", topic);
+        properties.put("spring.kafka.bootstrap-servers", kafka.getBrokersAsString());
+        properties.put("camel.component.kafka.auto-offset-reset", "earliest");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:bench_" + variant
+                + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=false");
+        properties.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.sql.init.mode", "always");
+        properties.put("camel.springboot.main-run-controller", "false");
+        // Keep the demo producers and the pending-orders timer out of the measurement
+        properties.put("camel.springboot.route-filter-exclude-pattern", "timer:*");
+        properties.put("spring.jmx.enabled", "false");
+        properties.put("logging.level.root", "WARN");
+        return properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Records end-to-end latency when a Kafka consumer exchange completes; split and aggregate
+     * copies carry a correlation id and are ignored
+     */
+    static final class LatencyRecorder extends EventNotifierSupport {
+
+        private final long[] latencies;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicLong lastCompletion = new AtomicLong();
+
+        LatencyRecorder(int capacity) {
+            this.latencies = new long[capacity];
+        }
+
+        @Override
+        public boolean isEnabled(CamelEvent event) {
+            return event instanceof CamelEvent.ExchangeCompletedEvent;
+        }
+
+        @Override
+        public void notify(CamelEvent event) {
+            Exchange exchange = ((CamelEvent.ExchangeCompletedEvent) event).getExchange();
+            Long timestamp = exchange.getIn().getHeader(KafkaConstants.TIMESTAMP, Long.class);
+            if (timestamp == null || exchange.getProperty(Exchange.CORRELATION_ID) != null) {
+                return;
+            }
+            int index = count.getAndIncrement();
+            if (index < latencies.length) {
+                latencies[index] = System.currentTimeMillis() - timestamp;
+            }
+            lastCompletion.set(System.nanoTime());
+        }
+
+        int count() {
+            return count.get();
+        }
+
+        long lastCompletionNanos() {
+            return lastCompletion.get();
+        }
+
+        void reset() {
+            count.set(0);
+        }
+
+        long percentile(int percentile) {
+            int size = Math.min(count.get(), latencies.length);
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            return size == 0 ? 0 : sorted[Math.min(size - 1, (int) Math.ceil(percentile / 100.0 * size) - 1)];
+        }
+    }
+
+    /**
+     * Wraps the application DataSource and counts every statement execution; a JDBC batch
+     * counts as one statement
+     */
+    static final class StatementCounter implements BeanPostProcessor {
+
+        private static final Set<String> EXECUTE_METHODS = new HashSet<>(Arrays.asList(
+                "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch"));
+
+        private final AtomicLong statements = new AtomicLong();
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource) {
+                return proxy(DataSource.class, bean);
+            }
+            return bean;
+        }
+
+        long count() {
+            return statements.get();
+        }
+
+        void reset() {
+            statements.set(0);
+        }
+
+        private <T> T proxy(Class<T> type, Object target) {
+            return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> intercept(target, method, args)));
+        }
+
+        private Object intercept(Object target, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Connection && !(target instanceof Connection)) {
+                return proxy(Connection.class, result);
+            }
+            if (result instanceof Statement && target instanceof Connection) {
+                return proxy(statementType(method), result);
+            }
+            if (target instanceof Statement && EXECUTE_METHODS.contains(method.getName())) {
+                statements.incrementAndGet();
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Class<? extends Statement> statementType(Method method) {
+            return (Class<? extends Statement>) method.getReturnType();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.v2;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffsetCommitTrackerTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("order-demo", 0);
+
+    private final OffsetCommitTracker tracker = new OffsetCommitTracker();
+    private final List<Long> commits = new ArrayList<>();
+
+    @Test
+    void testCommitsOnlyContiguousWatermark() {
+        List<OffsetCommitTracker.Ticket> tickets = register(10, 11, 12, 13);
+
+        tracker.complete(tickets.get(2));
+        tracker.complete(tickets.get(1));
+        assertTrue(commits.isEmpty(), "offset 10 is still in flight");
+
+        tracker.complete(tickets.get(0));
+        assertEquals(List.of(12L), commits);
+
+        tracker.complete(tickets.get(3));
+        assertEquals(List.of(12L, 13L), commits);
+        assertEquals(13L, tracker.committedOffset(PARTITION));
+        assertEquals(0, tracker.inFlightCount());
+    }
+
+    @Test
+    void testGapsInOffsetsDoNotBlockTheWatermark() {
+        // Compacted topics and transaction markers leave holes in the offsets
+        List<OffsetCommitTracker.Ticket> tickets = register(5, 9, 20);
+
+        tracker.complete(tickets.get(0));
+        tracker.complete(tickets.get(1));
+
+        assertEquals(List.of(5L, 9L), commits);
+    }
+
+    @Test
+    void testCompletingTwiceIsIgnored() {
+        List<OffsetCommitTracker.Ticket> tickets = register(1, 2);
+
+        tracker.complete(tickets.get(0));
+        tracker.complete(tickets.get(0));
+
+        assertEquals(List.of(1L), commits);
+        assertEquals(1, tracker.inFlightCount());
+    }
+
+    @Test
+    void testRewindResetsPartitionState() {
+        List<OffsetCommitTracker.Ticket> first = register(1, 2);
+        tracker.complete(first.get(0));
+        tracker.complete(first.get(1));
+
+        // Partition reassigned and replayed from offset 2
+        List<OffsetCommitTracker.Ticket> replay = register(2);
+        tracker.complete(replay.get(0));
+
+        assertEquals(List.of(1L, 2L, 2L), commits);
+    }
+
+    private List<OffsetCommitTracker.Ticket> register(long... offsets) {
+        List<OffsetCommitTracker.Ticket> tickets = new ArrayList<>();
+        for (long offset : offsets) {
+            tickets.add(tracker.register(PARTITION, offset, () -> commits.add(offset)));
+        }
+        return tickets;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.v2;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ServiceStatus;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OrderBackpressureControllerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderMetrics orderMetrics = new OrderMetrics(meterRegistry);
+    private CamelContext camelContext;
+    private OrderCatchUpController catchUp;
+    private OrderBackpressureController controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        camelContext = new DefaultCamelContext();
+        camelContext.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from("direct:orders").routeId(OrderCatchUpController.STREAMING_ROUTE).to("log:orders");
+                from("direct:catchUp").routeId(OrderCatchUpController.CATCH_UP_ROUTE).autoStartup(false).to("log:orders");
+            }
+        });
+        camelContext.start();
+
+        catchUp = new OrderCatchUpController(camelContext, new ConsumerLagMonitor(meterRegistry), meterRegistry);
+        controller = controller(new DriverManagerDataSource());
+    }
+
+    private OrderBackpressureController controller(DataSource... shards) {
+        OrderBackpressureController controller = new OrderBackpressureController(camelContext,
+                new OrderShards(Arrays.asList(shards)), orderMetrics, catchUp, meterRegistry);
+        ReflectionTestUtils.setField(controller, "enabled", true);
+        ReflectionTestUtils.setField(controller, "targetLatencyMs", 50L);
+        ReflectionTestUtils.setField(controller, "targetBatchLatencyMs", 1000L);
+        ReflectionTestUtils.setField(controller, "pausePendingThreads", 5);
+        ReflectionTestUtils.setField(controller, "minBatchSize", 50);
+        ReflectionTestUtils.setField(controller, "batchSizeStep", 50);
+        ReflectionTestUtils.setField(controller, "maxBatchSize", 500);
+        return controller;
+    }
+
+    @AfterEach
+    void tearDown() {
+        camelContext.stop();
+    }
+
+    @Test
+    void testBatchSizeHalvesWhileBehindAndGrowsBackByStep() {
+        assertEquals(500, controller.batchSize());
+
+        upserts(80);
+        controller.evaluate();
+        assertEquals(250, controller.batchSize());
+        upserts(80);
+        controller.evaluate();
+        assertEquals(125, controller.batchSize());
+
+        upserts(5);
+        controller.evaluate();
+        assertEquals(175, controller.batchSize());
+    }
+
+    @Test
+    void testBatchSizeStaysWithinBounds() {
+        for (int i = 0; i < 10; i++) {
+            upserts(80);
+            controller.evaluate();
+        }
+        assertEquals(50, controller.batchSize());
+
+        for (int i = 0; i < 20; i++) {
+            controller.evaluate();
+        }
+        assertEquals(500, controller.batchSize());
+    }
+
+    @Test
+    void testConsumerIsSuspendedWhenOverloadedAndResumedOnceCaughtUp() {
+        upserts(150);
+        controller.evaluate();
+
+        assertTrue(controller.isPaused());
+        assertEquals(ServiceStatus.Suspended, camelContext.getRouteController().getRouteStatus(OrderCatchUpController.STREAMING_ROUTE));
+        assertEquals(1.0, meterRegistry.get("orders.backpressure.paused").gauge().value());
+
+        upserts(10);
+        controller.evaluate();
+
+        assertFalse(controller.isPaused());
+        assertEquals(ServiceStatus.Started, camelContext.getRouteController().getRouteStatus(OrderCatchUpController.STREAMING_ROUTE));
+        assertEquals(false, controller.state().get("paused"));
+    }
+
+    @Test
+    void testPauseMovesToTheConsumerCatchUpSwitchedTo() throws Exception {
+        upserts(150);
+        controller.evaluate();
+        assertEquals(ServiceStatus.Suspended, camelContext.getRouteController().getRouteStatus(OrderCatchUpController.STREAMING_ROUTE));
+
+        // The catch-up controller hands the topic over while the streaming consumer is suspended
+        camelContext.getRouteController().stopRoute(OrderCatchUpController.STREAMING_ROUTE);
+        ReflectionTestUtils.setField(catchUp, "active", true);
+        camelContext.getRouteController().startRoute(OrderCatchUpController.CATCH_UP_ROUTE);
+
+        upserts(150);
+        controller.evaluate();
+        assertTrue(controller.isPaused());
+        assertEquals(OrderCatchUpController.CATCH_UP_ROUTE, controller.state().get("pausedRoute"));
+        assertEquals(ServiceStatus.Suspended, camelContext.getRouteController().getRouteStatus(OrderCatchUpController.CATCH_UP_ROUTE));
+
+        upserts(10);
+        controller.evaluate();
+        assertFalse(controller.isPaused());
+        assertEquals(ServiceStatus.Started, camelContext.getRouteController().getRouteStatus(OrderCatchUpController.CATCH_UP_ROUTE));
+        assertEquals(ServiceStatus.Stopped, camelContext.getRouteController().getRouteStatus(OrderCatchUpController.STREAMING_ROUTE));
+    }
+
+    @Test
+    void testConnectionWaitsAreSummedOverTheShards() throws Exception {
+        // 3 waiting threads per shard: under pause-pending-threads on each, over it together
+        controller = controller(waitingPool(3), waitingPool(3));
+        controller.evaluate();
+
+        assertTrue(controller.isPaused());
+        assertEquals(6, controller.state().get("pendingThreads"));
+    }
+
+    private static DataSource waitingPool(int threads) throws Exception {
+        HikariPoolMXBean pool = mock(HikariPoolMXBean.class);
+        when(pool.getThreadsAwaitingConnection()).thenReturn(threads);
+        HikariDataSource dataSource = mock(HikariDataSource.class);
+        when(dataSource.isWrapperFor(HikariDataSource.class)).thenReturn(true);
+        when(dataSource.unwrap(HikariDataSource.class)).thenReturn(dataSource);
+        when(dataSource.getHikariPoolMXBean()).thenReturn(pool);
+        return dataSource;
+    }
+
+    private void upserts(long latencyMs) {
+        for (int i = 0; i < 3; i++) {
+            orderMetrics.record("upsert", TimeUnit.MILLISECONDS.toNanos(latencyMs));
+        }
+    }
+}
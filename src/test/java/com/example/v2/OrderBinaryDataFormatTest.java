@@ -0,0 +1,92 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderBinaryDataFormatTest {
+
+    private final OrderBinaryDataFormat format = new OrderBinaryDataFormat();
+    private final OrderJsonDataFormat json = new OrderJsonDataFormat();
+
+    @Test
+    void testRoundTrip() throws Exception {
+        OrderModel order = OrderModel.builder()
+                .id(4242)
+                .version(7)
+                .name("widget")
+                .description("Kia ora – ünïcödé description")
+                .effectiveDate(OffsetDateTime.of(2024, 3, 1, 10, 15, 30, 123_456_789, ZoneOffset.UTC))
+                .status(StatusEnum.APPROVED)
+                .build();
+
+        byte[] payload = format.encode(order);
+
+        assertEquals(order, format.decode(payload));
+        assertEquals(OrderBinaryDataFormat.FORMAT_VERSION, payload[0]);
+        assertTrue(payload.length < json.encode(order).length / 2, "binary payload should be well under the JSON size");
+    }
+
+    @Test
+    void testDecodesTheSameOrderAsJson() throws Exception {
+        OrderModel order = OrderModel.builder()
+                .id(4242)
+                .version(7)
+                .name("widget")
+                .description("d")
+                .effectiveDate(OffsetDateTime.parse("2024-03-01T10:15+13:00"))
+                .status(StatusEnum.APPROVED)
+                .build();
+
+        OrderModel fromBinary = format.decode(format.encode(order));
+        OrderModel fromJson = json.decode(json.encode(order));
+
+        assertEquals(fromJson, fromBinary);
+        assertEquals(order.getEffectiveDate().toInstant(), fromBinary.getEffectiveDate().toInstant());
+        assertEquals(LocalDate.of(2024, 2, 29), fromBinary.getEffectiveDate().toLocalDate());
+        assertEquals(fromJson.businessFingerprint(), fromBinary.businessFingerprint());
+    }
+
+    @Test
+    void testNullsAndNegativeValuesRoundTrip() {
+        OrderModel order = OrderModel.builder()
+                .id(-1)
+                .version(0)
+                .build();
+
+        assertEquals(order, format.decode(format.encode(order)));
+    }
+
+    @Test
+    void testUnknownFormatVersionIsRejected() {
+        byte[] payload = format.encode(OrderModel.builder().id(1).build());
+        payload[0] = 99;
+
+        assertThrows(IllegalArgumentException.class, () -> format.decode(payload));
+    }
+
+    @Test
+    void testUnknownStatusIsRejected() {
+        byte[] payload = format.encode(OrderModel.builder().id(1).status(StatusEnum.DRAFT).build());
+        // Format version, id and version take one byte each, the status byte follows
+        for (byte status : new byte[]{(byte) (StatusEnum.values().length + 1), -1}) {
+            payload[3] = status;
+
+            assertThrows(IllegalArgumentException.class, () -> format.decode(payload));
+        }
+    }
+
+    @Test
+    void testTruncatedPayloadIsRejected() {
+        byte[] payload = format.encode(OrderModel.builder().id(1).name("widget").build());
+        byte[] truncated = java.util.Arrays.copyOf(payload, payload.length - 2);
+
+        assertThrows(IllegalArgumentException.class, () -> format.decode(truncated));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The staging path of the bulk engine on H2: multi-row INSERTs into a session temp table, then one MERGE
+ */
+class OrderBulkWriterTest {
+
+    // One session, so every write reuses the same local temporary staging table
+    private final SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+            "jdbc:h2:mem:bulkwriter;MODE=MSSQLServer;DATABASE_TO_UPPER=false", "sa", "", true);
+    private JdbcTemplate jdbcTemplate;
+    private OrderBulkWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE [Orders] (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, " +
+                "description VARCHAR(1000), effective_date DATE, status VARCHAR(50), row_hash BIGINT, version INT)");
+        // Two rows per INSERT, so a chunk spans several statements
+        writer = new OrderBulkWriter(dataSource, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void testStagesTheLatestVersionPerOrder() throws SQLException {
+        int merged = writer.write(Arrays.asList(order(1, 1, "first"), order(2, 1, "other"),
+                order(1, 3, "third"), order(1, 2, "second"), order(3, 1, "another")));
+
+        assertEquals(3, merged);
+        assertEquals("third", jdbcTemplate.queryForObject("SELECT name FROM [Orders] WHERE id = 1", String.class));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT version FROM [Orders] WHERE id = 1", Integer.class));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM [Orders]", Integer.class));
+    }
+
+    @Test
+    void testSkipsStaleAndUnchangedRows() throws SQLException {
+        writer.write(Arrays.asList(order(1, 5, "current"), order(2, 1, "unchanged")));
+
+        int merged = writer.write(Arrays.asList(order(1, 4, "stale"), order(2, 1, "unchanged"), order(3, 1, "new")));
+
+        assertEquals(1, merged);
+        assertEquals("current", jdbcTemplate.queryForObject("SELECT name FROM [Orders] WHERE id = 1", String.class));
+        assertEquals(5, jdbcTemplate.queryForObject("SELECT version FROM [Orders] WHERE id = 1", Integer.class));
+    }
+
+    @Test
+    void testFailedChunkIsRolledBackAndNotStagedAgain() throws SQLException {
+        // The staging table takes a null name, the MERGE into [Orders] does not
+        OrderModel invalid = order(2, 1, null);
+
+        assertThrows(SQLException.class, () -> writer.write(Arrays.asList(order(1, 1, "first"), invalid)));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM [Orders]", Integer.class));
+
+        assertEquals(1, writer.write(Collections.singletonList(order(3, 1, "next"))));
+        assertEquals(Collections.singletonList(3), jdbcTemplate.queryForList("SELECT id FROM [Orders]", Integer.class));
+    }
+
+    private static OrderModel order(int id, int version, String name) {
+        return OrderModel.builder()
+                .id(id)
+                .version(version)
+                .name(name)
+                .description("Bulk order")
+                .effectiveDate(OffsetDateTime.parse("2024-01-01T00:00:00Z"))
+                .status(StatusEnum.DRAFT)
+                .build();
+    }
+}
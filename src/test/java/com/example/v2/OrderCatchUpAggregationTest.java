@@ -0,0 +1,75 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderCatchUpAggregationTest {
+
+    private final TopicPartition partition = new TopicPartition("order-demo", 0);
+    private final CamelContext context = new DefaultCamelContext();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OffsetCommitTracker tracker = new OffsetCommitTracker();
+    private final OrderCatchUpAggregation aggregation = new OrderCatchUpAggregation(new OrderMetrics(meterRegistry));
+
+    @Test
+    void testBatchKeepsTheLatestStatePerOrderAndEveryTicket() {
+        Exchange batch = null;
+        batch = aggregation.aggregate(batch, event(1, 1, "first", 10));
+        batch = aggregation.aggregate(batch, event(2, 1, "other", 11));
+        batch = aggregation.aggregate(batch, event(1, 3, "latest", 12));
+        batch = aggregation.aggregate(batch, event(1, 2, "replayed older", 13));
+        aggregation.onCompletion(batch);
+
+        @SuppressWarnings("unchecked")
+        List<OrderModel> orders = batch.getProperty(OrderRouteV2.BATCH_ORDERS, List.class);
+        assertEquals(2, orders.size());
+        assertEquals("latest", orders.get(0).getName());
+        assertEquals("other", orders.get(1).getName());
+        assertEquals(2, batch.getProperty("batchSize", Integer.class));
+
+        @SuppressWarnings("unchecked")
+        List<OffsetCommitTracker.Ticket> tickets = batch.getProperty(OrderRouteV2.BATCH_TICKETS, List.class);
+        assertEquals(4, tickets.size());
+        assertNull(batch.getProperty(OffsetCommitTracker.TICKET));
+        assertEquals(2, meterRegistry.get("orders.outcome").tag("outcome", "coalesced").counter().count());
+    }
+
+    @Test
+    void testBatchKeepsTheRecordHeadersOfTheLatestState() {
+        Exchange first = event(1, 1, "first", 10);
+        first.getIn().setHeader(KafkaConstants.TOPIC, "order-demo");
+        Exchange latest = event(1, 2, "latest", 11);
+        latest.getIn().setHeader(KafkaConstants.TOPIC, "order-demo.retry-1");
+        latest.getIn().setHeader(OrderRetryPolicy.ATTEMPT_HEADER, "1");
+
+        Exchange batch = aggregation.aggregate(aggregation.aggregate(null, first), latest);
+        aggregation.onCompletion(batch);
+
+        @SuppressWarnings("unchecked")
+        List<OrderBatchRecord> records = batch.getProperty(OrderRouteV2.BATCH_RECORDS, List.class);
+        assertEquals(1, records.size());
+        Exchange replayed = new DefaultExchange(context);
+        records.get(0).restore(replayed);
+        assertEquals("latest", replayed.getIn().getBody(OrderModel.class).getName());
+        assertEquals("order-demo.retry-1", replayed.getIn().getHeader(KafkaConstants.TOPIC));
+        assertEquals(1, OrderRetryPolicy.attempt(replayed));
+    }
+
+    private Exchange event(int id, int version, String name, long offset) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(OrderModel.builder().id(id).version(version).name(name).build());
+        exchange.setProperty(OffsetCommitTracker.TICKET, tracker.register(partition, offset, () -> { }));
+        return exchange;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderChangeTest {
+
+    private final OrderModel order = OrderModel.builder()
+            .id(42)
+            .version(3)
+            .name("widget")
+            .description("blue")
+            .effectiveDate(OffsetDateTime.of(2024, 3, 1, 10, 0, 0, 0, ZoneOffset.UTC))
+            .status(StatusEnum.APPROVED)
+            .build();
+
+    @Test
+    void testInsertChangesEveryField() {
+        OrderChange change = OrderChange.of(OrderChange.INSERT, order, null, null, null, null);
+
+        assertEquals(UpsertOutcome.INSERTED, change.outcome());
+        assertEquals(Arrays.asList("name", "description", "effectiveDate", "status"), change.getChangedFields());
+        assertEquals(LocalDate.of(2024, 3, 1), change.getEffectiveDate());
+        assertEquals("APPROVED", change.getStatus());
+    }
+
+    @Test
+    void testUpdateNamesOnlyTheChangedFields() {
+        OrderChange change = OrderChange.of(OrderChange.UPDATE, order, "widget", "red", LocalDate.of(2024, 3, 1), "DRAFT");
+
+        assertEquals(UpsertOutcome.UPDATED, change.outcome());
+        assertEquals(Arrays.asList("description", "status"), change.getChangedFields());
+    }
+
+    @Test
+    void testVersionOnlyUpdateChangesNoBusinessField() {
+        OrderChange change = OrderChange.of(OrderChange.UPDATE, order, "widget", "blue", LocalDate.of(2024, 3, 1), "APPROVED");
+
+        assertTrue(change.getChangedFields().isEmpty());
+    }
+
+    @Test
+    void testUpsertWithoutOutputHasNoFieldList() {
+        OrderChange change = OrderChange.of(OrderChange.UPSERT, order);
+
+        assertEquals(UpsertOutcome.UPSERTED, change.outcome());
+        assertNull(change.getChangedFields());
+        assertEquals(3, change.getVersion());
+    }
+}
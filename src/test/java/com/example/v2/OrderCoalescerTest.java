@@ -0,0 +1,76 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderCoalescerTest {
+
+    private final TopicPartition partition = new TopicPartition("order-demo", 0);
+    private final CamelContext context = new DefaultCamelContext();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OffsetCommitTracker tracker = new OffsetCommitTracker();
+    private final OrderCoalescer coalescer = new OrderCoalescer(tracker, new OrderMetrics(meterRegistry), meterRegistry);
+
+    @Test
+    void testLatestVersionThenOffsetSurvives() {
+        Exchange first = event(7, 1, 10);
+        Exchange second = event(7, 2, 11);
+        Exchange duplicate = event(7, 2, 12);
+
+        Exchange survivor = coalescer.aggregate(coalescer.aggregate(coalescer.aggregate(null, first), second), duplicate);
+
+        assertSame(duplicate, survivor);
+        assertEquals(3, survivor.getProperty(OrderCoalescer.COALESCED_EVENTS, Integer.class));
+        assertEquals(2, meterRegistry.get("orders.outcome").tag("outcome", "coalesced").counter().count());
+    }
+
+    @Test
+    void testOutOfOrderVersionDoesNotReplaceNewerEvent() {
+        Exchange newer = event(7, 3, 10);
+        Exchange older = event(7, 2, 11);
+
+        assertSame(newer, coalescer.aggregate(coalescer.aggregate(null, newer), older));
+    }
+
+    @Test
+    void testSupersededOffsetsCommitUpToTheSurvivor() {
+        Exchange first = event(7, 1, 10);
+        Exchange second = event(7, 2, 11);
+        Exchange survivor = event(7, 3, 12);
+
+        coalescer.aggregate(coalescer.aggregate(coalescer.aggregate(null, first), second), survivor);
+
+        // The survivor is still in flight, so nothing past it may be committed yet
+        assertEquals(11, tracker.committedOffset(partition));
+        tracker.complete(survivor);
+        assertEquals(12, tracker.committedOffset(partition));
+    }
+
+    @Test
+    void testCompletionRecordsEventsPerWindow() {
+        Exchange survivor = coalescer.aggregate(coalescer.aggregate(null, event(7, 1, 10)), event(7, 2, 11));
+
+        coalescer.onCompletion(survivor);
+        coalescer.onCompletion(event(8, 1, 12));
+
+        assertEquals(2, meterRegistry.get("orders.coalesce.events").summary().count());
+        assertEquals(3, meterRegistry.get("orders.coalesce.events").summary().totalAmount());
+    }
+
+    private Exchange event(int id, int version, long offset) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(OrderModel.builder().id(id).version(version).name("order").build());
+        exchange.getIn().setHeader(KafkaConstants.OFFSET, offset);
+        exchange.setProperty(OffsetCommitTracker.TICKET, tracker.register(partition, offset, () -> { }));
+        return exchange;
+    }
+}
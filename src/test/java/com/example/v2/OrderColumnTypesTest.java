@@ -0,0 +1,82 @@
+package com.example.v2;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderColumnTypesTest {
+
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:columntypes;MODE=MSSQLServer;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS [Orders]");
+        jdbcTemplate.execute("CREATE TABLE [Orders] (id INT PRIMARY KEY, name NVARCHAR(255) NOT NULL, " +
+                "description VARCHAR(1000), status VARCHAR(50))");
+    }
+
+    @Test
+    void testReadsColumnTypesFromMetadata() {
+        OrderColumnTypes columnTypes = new OrderColumnTypes(dataSource);
+
+        assertEquals(Types.VARCHAR, columnTypes.type("status"));
+        assertEquals(Types.VARCHAR, columnTypes.type("DESCRIPTION"), "column names are matched case-insensitively");
+        assertEquals(Types.INTEGER, columnTypes.type("id"));
+        assertEquals(Types.NVARCHAR, columnTypes.type("missing"), "unknown columns fall back to NVARCHAR");
+    }
+
+    @Test
+    void testFailedLoadIsReadAgainOnNextUse() {
+        new JdbcTemplate(dataSource).execute("DROP TABLE [Orders]");
+        OrderColumnTypes columnTypes = new OrderColumnTypes(dataSource);
+
+        assertEquals(Types.NVARCHAR, columnTypes.type("status"), "strings are bound as NVARCHAR without metadata");
+
+        setUp();
+        assertEquals(Types.VARCHAR, columnTypes.type("status"));
+    }
+
+    @Test
+    void testDriverDefaultBindsUnknownColumnsAsVarchar() {
+        assertEquals(Types.VARCHAR, OrderColumnTypes.DRIVER_DEFAULT.type("name"));
+    }
+
+    @Test
+    void testBindsUnicodeColumnsAsNString() throws Exception {
+        OrderColumnTypes columnTypes = new OrderColumnTypes(Map.of("name", Types.NVARCHAR, "status", Types.VARCHAR));
+        List<String> calls = new ArrayList<>();
+        PreparedStatement ps = recording(calls);
+
+        columnTypes.setString(ps, 1, "name", "widget");
+        columnTypes.setString(ps, 2, "status", "DONE");
+        columnTypes.setString(ps, 3, "name", null);
+        columnTypes.setString(ps, 4, "status", null);
+
+        assertEquals(List.of("setNString:1", "setString:2", "setNull:3:" + Types.NVARCHAR, "setNull:4:" + Types.VARCHAR), calls);
+    }
+
+    /**
+     * A PreparedStatement recording the setter and parameter index of every call, and the type of setNull
+     */
+    private static PreparedStatement recording(List<String> calls) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                OrderColumnTypesTest.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    calls.add(method.getName() + ":" + args[0] + (method.getName().equals("setNull") ? ":" + args[1] : ""));
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.javafaker.Faker;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.jackson.JacksonDataFormat;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the current consumer decode path (StringDeserializer + Camel Jackson data format)
+ * with the byte[] path through {@link OrderJsonDataFormat}; run with -prof gc for allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderDecodeBenchmark {
+
+    private DefaultCamelContext camelContext;
+    private JacksonDataFormat camelJackson;
+    private OrderJsonDataFormat orderJson;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws Exception {
+        Faker faker = new Faker(new Locale("en-NZ"));
+        OrderModel order = OrderModel.builder()
+                .id(4242)
+                .version(3)
+                .name(faker.lorem().word())
+                .description(faker.lorem().paragraph(2))
+                .effectiveDate(OffsetDateTime.now())
+                .status(StatusEnum.APPROVED)
+                .build();
+
+        ObjectMapper mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        payload = mapper.writeValueAsBytes(order);
+
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        camelJackson = new JacksonDataFormat(mapper, OrderModel.class);
+        camelJackson.setCamelContext(camelContext);
+        camelJackson.start();
+
+        orderJson = new OrderJsonDataFormat();
+        orderJson.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        camelContext.stop();
+    }
+
+    @Benchmark
+    public Object camelJacksonFromString() throws Exception {
+        // What the route does today: the Kafka StringDeserializer builds a String, Camel converts it back to a stream
+        Exchange exchange = new DefaultExchange(camelContext);
+        String value = new String(payload, StandardCharsets.UTF_8);
+        exchange.getIn().setBody(value);
+        InputStream stream = camelContext.getTypeConverter().mandatoryConvertTo(InputStream.class, exchange, value);
+        return camelJackson.unmarshal(exchange, stream);
+    }
+
+    @Benchmark
+    public Object orderJsonFromBytes() throws Exception {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(payload);
+        return orderJson.unmarshal(exchange, null);
+    }
+}
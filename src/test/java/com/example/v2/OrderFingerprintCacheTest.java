@@ -0,0 +1,82 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderFingerprintCacheTest {
+
+    private OrderFingerprintCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new OrderFingerprintCache(true, 1024, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testRepeatedStateIsSkipped() {
+        assertTrue(cache.admit(order(1, "DRAFT")));
+        assertFalse(cache.admit(order(1, "DRAFT")));
+        assertTrue(cache.admit(order(1, "APPROVED")));
+
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, cache.missCount());
+    }
+
+    @Test
+    void testInvalidateAfterFailedWrite() {
+        assertTrue(cache.admit(order(7, "DONE")));
+
+        cache.invalidate(7);
+
+        assertTrue(cache.admit(order(7, "DONE")));
+    }
+
+    @Test
+    void testNewerVersionOfARejectedStateIsAdmitted() {
+        long state = order(5, "DRAFT").businessFingerprint();
+
+        // A replayed version 5 the MERGE rejects as stale, then version 7 with the same state
+        assertTrue(cache.admit(5, state, 5));
+        assertTrue(cache.admit(5, state, 7));
+        assertFalse(cache.admit(5, state, 7));
+    }
+
+    @Test
+    void testCacheStaysWithinBound() {
+        BoundedIntLongMap map = new BoundedIntLongMap(1000);
+
+        for (int id = 0; id < 100_000; id++) {
+            map.put(id, id);
+        }
+
+        assertTrue(map.size() <= map.capacity());
+        assertTrue(map.capacity() <= 1000);
+        assertEquals(99_999L, map.get(99_999, -1L));
+    }
+
+    @Test
+    void testFingerprintCoversBusinessFields() {
+        OrderEntity order = order(3, "DRAFT");
+        OrderEntity renamed = order(3, "DRAFT");
+        renamed.setName("Other");
+
+        assertEquals(order.businessFingerprint(), order(3, "DRAFT").businessFingerprint());
+        assertNotEquals(order.businessFingerprint(), renamed.businessFingerprint());
+    }
+
+    private static OrderEntity order(int id, String status) {
+        return OrderEntity.builder()
+                .id(id)
+                .name("Order " + id)
+                .description("Description")
+                .effectiveDate(LocalDate.of(2025, 7, 1))
+                .status(status)
+                .build();
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.jackson.JacksonDataFormat;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The fast decoder must be a drop-in for {@code .unmarshal().json(JsonLibrary.Jackson, OrderModel.class)},
+ * which auto-discovers the ObjectMapper Spring Boot builds from {@link Jackson2ObjectMapperBuilder}
+ */
+class OrderJsonDataFormatTest {
+
+    private final OrderJsonDataFormat orderJson = new OrderJsonDataFormat();
+    private CamelContext camelContext;
+    private JacksonDataFormat camelJackson;
+
+    @BeforeEach
+    void setUp() {
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        camelJackson = new JacksonDataFormat(Jackson2ObjectMapperBuilder.json().build(), OrderModel.class);
+        camelJackson.setCamelContext(camelContext);
+        camelJackson.start();
+        orderJson.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        camelContext.stop();
+    }
+
+    @Test
+    void testDatesAndOffsetsDecodeAlike() throws Exception {
+        for (String date : new String[]{"2024-03-01T10:15:00Z", "2024-03-01T10:15:00+13:00",
+                "2024-02-29T23:59:59.123456789-05:00", "2024-03-01T10:15:00.5+05:45"}) {
+            String json = "{\"id\":1,\"version\":2,\"name\":\"widget\",\"description\":\"d\"," +
+                    "\"effectiveDate\":\"" + date + "\",\"status\":\"APPROVED\"}";
+
+            OrderModel expected = camel(json);
+
+            assertEquals(expected, fromBytes(json), date);
+            assertEquals(expected, fromStream(json), date);
+            assertEquals(OffsetDateTime.parse(date).toInstant(), fromBytes(json).getEffectiveDate().toInstant(), date);
+            assertEquals(ZoneOffset.UTC, fromBytes(json).getEffectiveDate().getOffset(), "dates are adjusted to UTC");
+        }
+    }
+
+    @Test
+    void testUnknownPropertiesAreIgnoredAlike() throws Exception {
+        String json = "{\"id\":1,\"version\":2,\"name\":\"widget\",\"source\":\"legacy\"," +
+                "\"lines\":[{\"sku\":\"A-1\",\"qty\":3}],\"audit\":{\"by\":null},\"status\":\"DRAFT\"}";
+
+        OrderModel expected = camel(json);
+
+        assertEquals(expected, fromBytes(json));
+        assertEquals(expected, fromStream(json));
+        assertEquals("widget", expected.getName());
+    }
+
+    @Test
+    void testNullsAndMissingFieldsDecodeAlike() throws Exception {
+        for (String json : new String[]{
+                "{\"id\":3,\"version\":null,\"name\":null,\"description\":null,\"effectiveDate\":null,\"status\":null}",
+                "{\"id\":3}",
+                "{}"}) {
+            OrderModel expected = camel(json);
+
+            assertEquals(expected, fromBytes(json), json);
+            assertEquals(expected, fromStream(json), json);
+        }
+        assertEquals(OrderModel.builder().id(3).build(), fromBytes("{\"id\":3}"));
+    }
+
+    @Test
+    void testEncodedOrderDecodesAlike() throws Exception {
+        OrderModel order = OrderModel.builder()
+                .id(4242)
+                .version(7)
+                .name("widget")
+                .description("Kia ora – ünïcödé description")
+                .effectiveDate(OffsetDateTime.of(2024, 3, 1, 10, 15, 30, 123_456_789, ZoneOffset.UTC))
+                .status(StatusEnum.APPROVED)
+                .build();
+        String json = new String(orderJson.encode(order), StandardCharsets.UTF_8);
+
+        assertEquals(order, camel(json));
+        assertEquals(order, fromBytes(json));
+        assertEquals(order, fromStream(json));
+    }
+
+    @Test
+    void testMalformedPayloadsAreRejectedAlike() {
+        for (String json : new String[]{"{\"id\":1,\"status\":\"SHIPPED\"}", "{\"id\":\"one\"}", "{\"id\":1"}) {
+            assertThrows(Exception.class, () -> camel(json), json);
+            assertThrows(Exception.class, () -> fromBytes(json), json);
+            assertThrows(Exception.class, () -> fromStream(json), json);
+        }
+    }
+
+    /**
+     * The current route: a String value (Kafka StringDeserializer) unmarshalled by Camel Jackson
+     */
+    private OrderModel camel(String json) throws Exception {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(json);
+        return (OrderModel) camelJackson.unmarshal(exchange, stream(json));
+    }
+
+    /**
+     * A byte[] value (Kafka ByteArrayDeserializer), parsed in place
+     */
+    private OrderModel fromBytes(String json) throws Exception {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(json.getBytes(StandardCharsets.UTF_8));
+        return (OrderModel) orderJson.unmarshal(exchange, stream(json));
+    }
+
+    /**
+     * Any other body, read from the stream Camel hands over
+     */
+    private OrderModel fromStream(String json) throws Exception {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(json);
+        return (OrderModel) orderJson.unmarshal(exchange, stream(json));
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderLoadPatternTest {
+
+    private static final OrderModel[] TEMPLATES = {
+            OrderModel.builder().name("a").description("first").effectiveDate(OffsetDateTime.now()).status(StatusEnum.DRAFT).build(),
+            OrderModel.builder().name("b").description("second").effectiveDate(OffsetDateTime.now()).status(StatusEnum.DONE).build()
+    };
+
+    @Test
+    void testVersionsIncreasePerOrderWithoutNoise() {
+        OrderLoadPattern pattern = new OrderLoadPattern(10, 0, 0, 0, TEMPLATES);
+        Random random = new Random(1);
+        Map<Integer, Integer> versions = new HashMap<>();
+
+        for (int i = 0; i < 1000; i++) {
+            OrderModel order = pattern.next(random);
+            assertTrue(order.getId() >= 1 && order.getId() <= 10);
+            Integer previous = versions.put(order.getId(), order.getVersion());
+            assertEquals(previous == null ? 1 : previous + 1, order.getVersion());
+        }
+    }
+
+    @Test
+    void testDuplicatesAndOutOfOrderVersionsAreMixedIn() {
+        OrderLoadPattern pattern = new OrderLoadPattern(5, 0, 0.2, 0.2, TEMPLATES);
+        Random random = new Random(2);
+        Map<Integer, OrderModel> latest = new HashMap<>();
+        int duplicates = 0;
+        int stale = 0;
+
+        for (int i = 0; i < 10_000; i++) {
+            OrderModel order = pattern.next(random);
+            OrderModel last = latest.get(order.getId());
+            if (last != null && order.equals(last)) {
+                duplicates++;
+            } else if (last != null && order.getVersion() < last.getVersion()) {
+                stale++;
+                continue;
+            }
+            latest.put(order.getId(), order);
+        }
+
+        assertEquals(2000, duplicates, 300);
+        assertEquals(2000, stale, 300);
+    }
+
+    @Test
+    void testZipfSkewsTowardsLowIds() {
+        OrderLoadPattern pattern = new OrderLoadPattern(1000, 1.0, 0, 0, TEMPLATES);
+        Random random = new Random(3);
+        int top10 = 0;
+
+        for (int i = 0; i < 10_000; i++) {
+            if (pattern.nextKey(random) < 10) {
+                top10++;
+            }
+        }
+
+        // The first 10 of 1000 ids carry about 39% of a Zipf(1.0) distribution, against 1% uniform
+        assertTrue(top10 > 3000, "top 10 ids drew " + top10);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.v2;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderMetrics metrics = new OrderMetrics(meterRegistry);
+
+    @Test
+    void testLapsRecordTheTimeSinceThePreviousStage() throws Exception {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(KafkaConstants.TIMESTAMP, System.currentTimeMillis() - 50);
+
+        metrics.received(exchange);
+        metrics.lap("unmarshal").process(exchange);
+        metrics.lap("validate").process(exchange);
+
+        assertEquals(1, meterRegistry.get("orders.stage").tag("stage", "dwell").timer().count());
+        assertTrue(meterRegistry.get("orders.stage").tag("stage", "dwell").timer().totalTime(TimeUnit.MILLISECONDS) >= 50);
+        assertEquals(1, meterRegistry.get("orders.stage").tag("stage", "unmarshal").timer().count());
+        assertEquals(1, meterRegistry.get("orders.stage").tag("stage", "validate").timer().count());
+    }
+
+    @Test
+    void testLapWithoutClockIsNotRecorded() throws Exception {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+
+        metrics.lap("filter").process(exchange);
+
+        assertEquals(0, meterRegistry.get("orders.stage").tag("stage", "filter").timer().count());
+        assertNotNull(exchange.getProperty(OrderMetrics.STAGE_CLOCK));
+    }
+
+    @Test
+    void testOutcomesAreCountedByTag() {
+        metrics.count(UpsertOutcome.INSERTED);
+        metrics.count(UpsertOutcome.UPSERTED, 3);
+        metrics.count(UpsertOutcome.UNCHANGED, 0);
+
+        assertEquals(1, meterRegistry.get("orders.outcome").tag("outcome", "inserted").counter().count());
+        assertEquals(3, meterRegistry.get("orders.outcome").tag("outcome", "upserted").counter().count());
+        assertEquals(0, meterRegistry.get("orders.outcome").tag("outcome", "unchanged").counter().count());
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderModelValidatorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderModelValidator validator = new OrderModelValidator(meterRegistry);
+
+    @Test
+    void testValidOrderPasses() throws Exception {
+        assertTrue(validator.check(validOrder().build()).isEmpty());
+
+        validator.validate(exchangeWith(validOrder().build()));
+        assertEquals(0, meterRegistry.counter("orders.rejected").count());
+    }
+
+    @Test
+    void testEveryViolationIsReported() {
+        OrderModel order = OrderModel.builder()
+                .id(0)
+                .version(-1)
+                .name("x".repeat(OrderModelValidator.MAX_NAME_LENGTH + 1))
+                .build();
+
+        List<String> fields = validator.check(order).stream()
+                .map(OrderValidationException.Violation::getField)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("id", "version", "name", "description", "effectiveDate", "status"), fields);
+    }
+
+    @Test
+    void testInvalidOrderIsRejectedWithStructuredError() {
+        Exchange exchange = exchangeWith(validOrder().id(42).effectiveDate(null).build());
+
+        OrderValidationException e = assertThrows(OrderValidationException.class, () -> validator.validate(exchange));
+
+        assertEquals(42, e.getOrderId());
+        assertEquals(1, e.getViolations().size());
+        assertEquals("effectiveDate", e.getViolations().get(0).getField());
+        assertSame(exchange, e.getExchange());
+        assertEquals(1, meterRegistry.counter("orders.rejected").count());
+    }
+
+    private static OrderModel.OrderModelBuilder validOrder() {
+        return OrderModel.builder()
+                .id(1)
+                .version(1)
+                .name("widget")
+                .description("a widget")
+                .effectiveDate(OffsetDateTime.now())
+                .status(StatusEnum.APPROVED);
+    }
+
+    private static Exchange exchangeWith(OrderModel order) {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setBody(order);
+        return exchange;
+    }
+}
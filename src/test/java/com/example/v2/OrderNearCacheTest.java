@@ -0,0 +1,151 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderNearCacheTest {
+
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:nearcache;MODE=MSSQLServer;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS [Orders]");
+        jdbcTemplate.execute("CREATE TABLE [Orders] (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, " +
+                "description VARCHAR(1000), effective_date DATE, status VARCHAR(50), row_hash BIGINT, version INT)");
+        jdbcTemplate.update("INSERT INTO [Orders] (id, name, status, version) VALUES (1, 'stored', 'DRAFT', 1)");
+    }
+
+    @Test
+    void testMissReadsThroughAndHitServesFromMemory() {
+        OrderNearCache cache = cache(1 << 20);
+
+        assertEquals("stored", cache.get(1).getName());
+        jdbcTemplate.update("UPDATE [Orders] SET name = 'changed behind the cache' WHERE id = 1");
+        assertEquals("stored", cache.get(1).getName());
+        assertNull(cache.get(2));
+
+        assertEquals(1, meterRegistry.get("orders.near-cache").tag("result", "hit").counter().count());
+        assertEquals(2, meterRegistry.get("orders.near-cache").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testGetAllReadsTheMissesTogether() {
+        OrderNearCache cache = cache(1 << 20);
+        jdbcTemplate.update("INSERT INTO [Orders] (id, name, status, version) VALUES (3, 'stored', 'DRAFT', 1)");
+        cache.put(change(2, 1, "written"));
+
+        List<OrderEntity> orders = cache.getAll(Arrays.asList(1, 2, 3, 4));
+
+        assertEquals(Arrays.asList("stored", "written", "stored"), orders.stream().map(OrderEntity::getName).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(1, 2, 3), orders.stream().map(OrderEntity::getId).collect(Collectors.toList()));
+        assertEquals(3, meterRegistry.get("orders.near-cache").tag("result", "miss").counter().count());
+
+        jdbcTemplate.update("UPDATE [Orders] SET name = 'changed behind the cache'");
+        assertEquals("stored", cache.get(3).getName(), "the misses were cached");
+    }
+
+    @Test
+    void testConsumerWritesReplaceAndInvalidate() {
+        OrderNearCache cache = cache(1 << 20);
+        cache.get(1);
+
+        cache.put(change(1, 2, "written"));
+        assertEquals("written", cache.get(1).getName());
+        assertEquals(2, cache.get(1).getVersion());
+
+        cache.invalidate(1);
+        assertEquals("stored", cache.get(1).getName());
+    }
+
+    @Test
+    void testReadThroughDoesNotOverwriteAConcurrentWrite() {
+        OrderNearCache cache = cache(1 << 20);
+        long stamp = cache.stamp();
+
+        cache.put(change(1, 2, "written"));
+        cache.load(OrderEntity.builder().id(1).version(1).name("stale read").build(), stamp);
+
+        assertEquals("written", cache.get(1).getName());
+    }
+
+    @Test
+    void testReadThroughIsCachedWhileOtherOrdersAreWritten() {
+        OrderNearCache cache = cache(1 << 20);
+        long stamp = cache.stamp();
+
+        // Ids in other segments and slots, as under steady ingest
+        for (int id = 2; id <= 20; id++) {
+            cache.put(change(id, 1, "ingested"));
+        }
+        cache.load(OrderEntity.builder().id(1).version(1).name("read").build(), stamp);
+
+        jdbcTemplate.update("UPDATE [Orders] SET name = 'changed behind the cache' WHERE id = 1");
+        assertEquals("read", cache.get(1).getName());
+    }
+
+    @Test
+    void testReadThroughDoesNotOverwriteAnInvalidation() {
+        OrderNearCache cache = cache(1 << 20);
+        long stamp = cache.stamp();
+
+        cache.invalidate(1);
+        cache.load(OrderEntity.builder().id(1).version(1).name("stale read").build(), stamp);
+
+        jdbcTemplate.update("UPDATE [Orders] SET name = 'unconfirmed write' WHERE id = 1");
+        assertEquals("unconfirmed write", cache.get(1).getName());
+    }
+
+    @Test
+    void testRowsExpireAfterWrite() throws Exception {
+        OrderNearCache cache = new OrderNearCache(true, 1 << 20, 1,
+                new OrderScanner(dataSource, new OrderColumnTypes(dataSource), 100, 100), meterRegistry);
+        cache.put(change(1, 2, "written"));
+
+        Thread.sleep(5);
+        assertEquals("stored", cache.get(1).getName(), "an expired row is read again");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testMemoryBoundEvictsLeastRecentlyUsed() {
+        // Room for a handful of rows per stripe
+        OrderNearCache cache = cache(16 * 3 * OrderNearCache.weigh(OrderNearCache.toEntity(change(0, 1, "order"))));
+        for (int id = 1; id <= 1000; id++) {
+            cache.put(change(id, 1, "order"));
+        }
+
+        assertTrue(cache.size() < 1000);
+        assertTrue(cache.weight() <= 16 * 3 * OrderNearCache.weigh(OrderNearCache.toEntity(change(0, 1, "order"))));
+        assertEquals(1000, cache.get(1000).getId());
+    }
+
+    private OrderNearCache cache(long maxBytes) {
+        return new OrderNearCache(true, maxBytes, 0, new OrderScanner(dataSource, new OrderColumnTypes(dataSource), 100, 100), meterRegistry);
+    }
+
+    private static OrderChange change(int id, int version, String name) {
+        return OrderChange.builder()
+                .action(OrderChange.UPDATE)
+                .id(id)
+                .version(version)
+                .name(name)
+                .effectiveDate(LocalDate.of(2024, 1, 1))
+                .status("DRAFT")
+                .build();
+    }
+}
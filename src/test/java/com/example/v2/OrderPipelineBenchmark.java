@@ -0,0 +1,176 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.jackson.JacksonDataFormat;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage baseline of the V2 consumer hot path, one benchmark per step a record goes through.
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.includes=OrderPipelineBenchmark};
+ * the profile adds the gc profiler and keeps the results in target/jmh-result.json for comparison.
+ * <p>
+ * The retired steps have their before/after comparisons in {@link OrderValidationBenchmark}
+ * (bean-validator) and {@link OrderUpsertBindingBenchmark} (entity transform and parameter map).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderPipelineBenchmark {
+
+    private DefaultCamelContext camelContext;
+    private JacksonDataFormat camelJackson;
+    private OrderJsonDataFormat orderJson;
+    private OrderBinaryDataFormat orderBinary;
+    private OrderModelValidator validator;
+    private OrderFingerprintCache fingerprintCache;
+    private OrderVersionGate versionGate;
+    private PreparedStatement statement;
+
+    private String jsonPayload;
+    private byte[] jsonBytes;
+    private byte[] binaryPayload;
+    private OrderModel order;
+    private OrderEntity entity;
+    private OrderEntity changedEntity;
+    private int nextId;
+
+    @Setup
+    public void setUp() throws Exception {
+        order = OrderModel.builder()
+                .id(4242)
+                .version(3)
+                .name("widget")
+                .description("Lorem ipsum dolor sit amet, consectetur adipiscing elit. Sed do eiusmod tempor " +
+                        "incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud.")
+                .effectiveDate(OffsetDateTime.now())
+                .status(StatusEnum.APPROVED)
+                .build();
+        entity = OrderEntity.builder()
+                .id(order.getId())
+                .version(order.getVersion())
+                .name(order.getName())
+                .description(order.getDescription())
+                .effectiveDate(order.getEffectiveDate().toLocalDate())
+                .status(order.getStatus().name())
+                .build();
+        changedEntity = OrderEntity.builder()
+                .id(entity.getId())
+                .version(entity.getVersion())
+                .name(entity.getName())
+                .description(entity.getDescription())
+                .effectiveDate(entity.getEffectiveDate())
+                .status(StatusEnum.DONE.name())
+                .build();
+
+        ObjectMapper mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        jsonBytes = mapper.writeValueAsBytes(order);
+        jsonPayload = new String(jsonBytes, StandardCharsets.UTF_8);
+
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        camelJackson = new JacksonDataFormat(mapper, OrderModel.class);
+        camelJackson.setCamelContext(camelContext);
+        camelJackson.start();
+        orderJson = new OrderJsonDataFormat();
+        orderBinary = new OrderBinaryDataFormat();
+        binaryPayload = orderBinary.encode(order);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        validator = new OrderModelValidator(meterRegistry);
+        fingerprintCache = new OrderFingerprintCache(true, 1 << 20, meterRegistry);
+        versionGate = new OrderVersionGate(true, 1 << 20, meterRegistry);
+        statement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        camelContext.stop();
+    }
+
+    @Benchmark
+    public Object unmarshalCamelJackson() throws Exception {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(jsonPayload);
+        InputStream stream = camelContext.getTypeConverter().mandatoryConvertTo(InputStream.class, exchange, jsonPayload);
+        return camelJackson.unmarshal(exchange, stream);
+    }
+
+    @Benchmark
+    public Object unmarshalOrderJson() throws Exception {
+        return orderJson.decode(jsonBytes);
+    }
+
+    @Benchmark
+    public Object unmarshalOrderBinary() {
+        return orderBinary.decode(binaryPayload);
+    }
+
+    @Benchmark
+    public Object validate() {
+        return validator.check(order);
+    }
+
+    @Benchmark
+    public boolean versionGateAdmit() {
+        return versionGate.admit(nextId(), order.getVersion());
+    }
+
+    @Benchmark
+    public long businessFingerprint() {
+        return order.businessFingerprint();
+    }
+
+    @Benchmark
+    public boolean fingerprintCacheAdmit() {
+        return fingerprintCache.admit(nextId(), order.businessFingerprint(), order.getVersion());
+    }
+
+    @Benchmark
+    public PreparedStatement bindUpsertParameters() throws Exception {
+        OrderUpsertBinder.bind(statement, order);
+        return statement;
+    }
+
+    @Benchmark
+    public boolean hasBusinessFieldsChanged() {
+        return entity.hasBusinessFieldsChanged(changedEntity);
+    }
+
+    @Benchmark
+    public boolean entityEquals() {
+        return entity.equals(changedEntity);
+    }
+
+    @Benchmark
+    public int entityHashCode() {
+        return entity.hashCode();
+    }
+
+    // Cycles through a working set so the bounded maps see both hits and new ids
+    private int nextId() {
+        nextId = (nextId + 1) & 0xFFFF;
+        return nextId;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderRetryPolicyTest {
+
+    private final CamelContext context = new DefaultCamelContext();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OrderJsonDataFormat json = new OrderJsonDataFormat();
+    private final OrderRetryPolicy policy = new OrderRetryPolicy(json, new OrderBinaryDataFormat(), meterRegistry);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(policy, "enabled", true);
+        ReflectionTestUtils.setField(policy, "delaysMs", new long[]{1000, 10000});
+        ReflectionTestUtils.setField(policy, "topicName", "order-demo");
+        ReflectionTestUtils.setField(policy, "brokerUrl", "localhost:9092");
+        ReflectionTestUtils.setField(policy, "wireFormat", "json");
+    }
+
+    @Test
+    void testFailedRecordMovesThroughTheRetryTopicsToTheDeadLetterTopic() throws Exception {
+        Exchange exchange = failed(new IllegalStateException("deadlock"));
+        exchange.getIn().setHeader("orderLane", 3);
+
+        policy.prepare(exchange);
+        assertTrue(exchange.getProperty(OrderRetryPolicy.RETRY_URI, String.class).startsWith("kafka:order-demo.retry-1?"));
+        assertEquals("1", exchange.getIn().getHeader(OrderRetryPolicy.ATTEMPT_HEADER));
+        assertEquals("42", exchange.getIn().getHeader(KafkaConstants.KEY));
+        assertNull(exchange.getIn().getHeader("orderLane"));
+        assertEquals(42, json.decode(exchange.getIn().getBody(byte[].class)).getId());
+
+        // The retry consumer hands the attempt back as a raw Kafka header
+        Exchange retried = failed(new IllegalStateException("deadlock"));
+        retried.getIn().setHeader(OrderRetryPolicy.ATTEMPT_HEADER, "1".getBytes(StandardCharsets.UTF_8));
+        policy.prepare(retried);
+        assertTrue(retried.getProperty(OrderRetryPolicy.RETRY_URI, String.class).startsWith("kafka:order-demo.retry-2?"));
+
+        Exchange exhausted = failed(new IllegalStateException("deadlock"));
+        exhausted.getIn().setHeader(OrderRetryPolicy.ATTEMPT_HEADER, "2");
+        policy.prepare(exhausted);
+        assertTrue(exhausted.getProperty(OrderRetryPolicy.RETRY_URI, String.class).startsWith("kafka:order-demo.dlq?"));
+
+        assertEquals(1, meterRegistry.get("orders.retried").tag("attempt", "1").counter().count());
+        assertEquals(1, meterRegistry.get("orders.dead-lettered").tag("reason", "exhausted").counter().count());
+    }
+
+    @Test
+    void testInvalidRecordIsDeadLetteredWithoutRetry() throws Exception {
+        Exchange exchange = failed(new OrderValidationException(new DefaultExchange(context), 42, Collections.emptyList()));
+
+        policy.prepare(exchange);
+
+        assertTrue(exchange.getProperty(OrderRetryPolicy.RETRY_URI, String.class).startsWith("kafka:order-demo.dlq?"));
+        assertEquals(1, meterRegistry.get("orders.dead-lettered").tag("reason", "rejected").counter().count());
+    }
+
+    @Test
+    void testUndecodableRecordIsRepublishedAsReceived() throws Exception {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody("{not json");
+        exchange.getIn().setHeader(KafkaConstants.KEY, "7");
+        exchange.setProperty(Exchange.EXCEPTION_CAUGHT, new IllegalArgumentException("bad payload"));
+
+        policy.prepare(exchange);
+
+        assertArrayEquals("{not json".getBytes(StandardCharsets.UTF_8), exchange.getIn().getBody(byte[].class));
+        assertEquals("7", exchange.getIn().getHeader(KafkaConstants.KEY));
+    }
+
+    @Test
+    void testUnpublishedChangesTravelWithTheRecord() throws Exception {
+        Exchange exchange = failed(new IllegalStateException("change topic unavailable"));
+        byte[] unpublished = "[{\"id\":42}]".getBytes(StandardCharsets.UTF_8);
+        exchange.getIn().setHeader(OrderChangeFeed.UNPUBLISHED_HEADER, unpublished);
+
+        policy.prepare(exchange);
+
+        assertSame(unpublished, exchange.getIn().getHeader(OrderChangeFeed.UNPUBLISHED_HEADER));
+    }
+
+    @Test
+    void testDisabledPolicyLeavesTheExchangeAlone() throws Exception {
+        ReflectionTestUtils.setField(policy, "enabled", false);
+        Exchange exchange = failed(new IllegalStateException("deadlock"));
+
+        policy.prepare(exchange);
+
+        assertNull(exchange.getProperty(OrderRetryPolicy.RETRY_URI));
+        assertTrue(exchange.getIn().getBody() instanceof OrderModel);
+    }
+
+    private Exchange failed(Exception error) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody(OrderModel.builder()
+                .id(42)
+                .version(1)
+                .name("order")
+                .description("description")
+                .effectiveDate(OffsetDateTime.now())
+                .status(StatusEnum.DRAFT)
+                .build());
+        exchange.setProperty(Exchange.EXCEPTION_CAUGHT, error);
+        return exchange;
+    }
+}
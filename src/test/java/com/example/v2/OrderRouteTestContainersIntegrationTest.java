@@ -105,6 +105,8 @@ class OrderRouteTestContainersIntegrationTest {
                          "    description NVARCHAR(1000),\n" +
                          "    effective_date DATE,\n" +
                          "    status NVARCHAR(50),\n" +
+                         "    row_hash BIGINT,\n" +
+                         "    version INT,\n" +
                          "    created_date DATETIME2 DEFAULT GETDATE(),\n" +
                          "    updated_date DATETIME2 DEFAULT GETDATE()\n" +
                          ")\n");
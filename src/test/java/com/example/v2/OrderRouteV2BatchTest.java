@@ -0,0 +1,167 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.apache.camel.test.spring.junit5.UseAdviceWith;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * The batching stage of the V2 consumer on H2: orders are upserted as one JDBC batch, and when a
+ * row fails the batch it is replayed per record so only that row goes to its retry topic
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+    "spring.datasource.url=jdbc:h2:mem:route_batch;MODE=MSSQLServer;DATABASE_TO_UPPER=false",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.sql.init.mode=always",
+    // No broker: the retry topics are not created and their producer is mocked
+    "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration",
+    "camel.springboot.main-run-controller=false",
+    // Records are sent straight to direct:processOrder
+    "camel.springboot.route-filter-exclude-pattern=kafka:*,timer:*",
+    "order.sql.verify-plans=false",
+    "order.upsert.batch.enabled=true",
+    "order.upsert.batch.max-linger-ms=100"
+})
+@CamelSpringBootTest
+@UseAdviceWith
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class OrderRouteV2BatchTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("order-demo", 0);
+
+    // Rejected by a check constraint, standing in for a row the database refuses
+    private static final int BAD_ORDER = 13;
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Autowired
+    private ProducerTemplate producerTemplate;
+
+    @Autowired
+    private OffsetCommitTracker offsetCommitTracker;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @SpyBean
+    private ShardedOrderWriter orderWriter;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AdviceWith.adviceWith(camelContext, "retryOrderV2", r -> r.mockEndpointsAndSkip("kafka:*"));
+        camelContext.start();
+        jdbcTemplate.execute("ALTER TABLE [Orders] ADD CONSTRAINT ck_orders_bad CHECK (id <> " + BAD_ORDER + ")");
+    }
+
+    @Test
+    void testOrdersAreWrittenAsOneBatch() throws Exception {
+        send(101, 0);
+        send(102, 1);
+        send(103, 2);
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> offsetCommitTracker.committedOffset(PARTITION) == 2);
+        assertEquals(List.of("order-101", "order-102", "order-103"),
+                jdbcTemplate.queryForList("SELECT name FROM [Orders] WHERE id > 100 ORDER BY id", String.class));
+        verify(orderWriter, times(1)).upsertAll(any(), any());
+        verify(orderWriter, never()).upsert(any());
+        assertEquals(0, offsetCommitTracker.inFlightCount());
+    }
+
+    @Test
+    void testBadRowFallsBackWithoutFailingTheOthers() throws Exception {
+        MockEndpoint retry = camelContext.getEndpoint("mock:kafka:order-demo.retry-1", MockEndpoint.class);
+        retry.expectedMessageCount(1);
+        retry.expectedHeaderReceived(KafkaConstants.KEY, String.valueOf(BAD_ORDER));
+
+        send(101, 0);
+        send(BAD_ORDER, 1);
+        send(102, 2);
+
+        retry.assertIsSatisfied();
+        await().atMost(Duration.ofSeconds(10)).until(() -> offsetCommitTracker.committedOffset(PARTITION) == 2);
+        assertEquals(List.of(101, 102),
+                jdbcTemplate.queryForList("SELECT id FROM [Orders] WHERE id > 1 ORDER BY id", Integer.class));
+        verify(orderWriter, times(3)).upsert(any());
+        assertEquals(1.0, meterRegistry.get("orders.outcome").tag("outcome", UpsertOutcome.FAILED.tag()).counter().count());
+        assertEquals(0, offsetCommitTracker.inFlightCount());
+    }
+
+    @Test
+    void testNewerVersionIsWrittenAfterAStaleReplayOfItsState() throws Exception {
+        OrderModel current = order(201, 6, StatusEnum.APPROVED);
+        jdbcTemplate.update("INSERT INTO [Orders] (id, name, description, effective_date, status, row_hash, version) " +
+                        "VALUES (?, ?, ?, DATE '2024-01-01', ?, ?, ?)", current.getId(), current.getName(),
+                current.getDescription(), current.getStatus().name(), current.businessFingerprint(), current.getVersion());
+
+        // Version 5 is rejected by the MERGE, version 7 moves the order back to the same state
+        send(order(201, 5, StatusEnum.DRAFT), 0);
+        await().atMost(Duration.ofSeconds(10)).until(() -> offsetCommitTracker.committedOffset(PARTITION) == 0);
+        assertEquals(6, jdbcTemplate.queryForObject("SELECT version FROM [Orders] WHERE id = 201", Integer.class));
+
+        send(order(201, 7, StatusEnum.DRAFT), 1);
+        await().atMost(Duration.ofSeconds(10)).until(() -> offsetCommitTracker.committedOffset(PARTITION) == 1);
+        assertEquals(7, jdbcTemplate.queryForObject("SELECT version FROM [Orders] WHERE id = 201", Integer.class));
+        assertEquals("DRAFT", jdbcTemplate.queryForObject("SELECT status FROM [Orders] WHERE id = 201", String.class));
+    }
+
+    private void send(int id, long offset) throws Exception {
+        send(order(id, 1, StatusEnum.DRAFT), offset);
+    }
+
+    private void send(OrderModel order, long offset) throws Exception {
+        String payload = objectMapper.writeValueAsString(order);
+        OffsetCommitTracker.Ticket ticket = offsetCommitTracker.register(PARTITION, offset, () -> { });
+        producerTemplate.send("direct:processOrder", exchange -> {
+            exchange.getIn().setBody(payload);
+            exchange.getIn().setHeader(KafkaConstants.KEY, String.valueOf(order.getId()));
+            exchange.setProperty(OffsetCommitTracker.TICKET, ticket);
+        });
+    }
+
+    private static OrderModel order(int id, int version, StatusEnum status) {
+        return OrderModel.builder()
+                .id(id)
+                .version(version)
+                .name("order-" + id)
+                .description("Batched order")
+                .effectiveDate(OffsetDateTime.parse("2024-01-01T00:00:00Z"))
+                .status(status)
+                .build();
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.apache.camel.test.spring.junit5.UseAdviceWith;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The bulk engine of the V2 consumer on H2, where the MERGE has no OUTPUT clause to report the rows
+ * it wrote: the status index must only take the statuses the batch actually stored
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+    "spring.datasource.url=jdbc:h2:mem:route_bulk;MODE=MSSQLServer;DATABASE_TO_UPPER=false",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.sql.init.mode=always",
+    // No broker: the retry topics are not created and their producer is mocked
+    "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration",
+    "camel.springboot.main-run-controller=false",
+    // Records are sent straight to direct:processOrder
+    "camel.springboot.route-filter-exclude-pattern=kafka:*,timer:*",
+    "order.sql.verify-plans=false",
+    "order.upsert.engine=bulk",
+    "order.upsert.batch.max-linger-ms=500"
+})
+@CamelSpringBootTest
+@UseAdviceWith
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class OrderRouteV2BulkTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("order-demo", 0);
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Autowired
+    private ProducerTemplate producerTemplate;
+
+    @Autowired
+    private OffsetCommitTracker offsetCommitTracker;
+
+    @Autowired
+    private OrderStatusIndex orderStatusIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AdviceWith.adviceWith(camelContext, "retryOrderV2", r -> r.mockEndpointsAndSkip("kafka:*"));
+        camelContext.start();
+        await().atMost(Duration.ofSeconds(10)).until(orderStatusIndex::isReady);
+    }
+
+    @Test
+    void testStaleRowInABatchKeepsItsStoredStatus() throws Exception {
+        OrderModel current = order(301, 6, StatusEnum.APPROVED);
+        jdbcTemplate.update("INSERT INTO [Orders] (id, name, description, effective_date, status, row_hash, version) " +
+                        "VALUES (?, ?, ?, DATE '2024-01-01', ?, ?, ?)", current.getId(), current.getName(),
+                current.getDescription(), current.getStatus().name(), current.businessFingerprint(), current.getVersion());
+
+        // One batch: version 5 of order 301 is rejected as stale, order 302 is written
+        send(order(301, 5, StatusEnum.DRAFT), 0);
+        send(order(302, 1, StatusEnum.DRAFT), 1);
+        await().atMost(Duration.ofSeconds(10)).until(() -> offsetCommitTracker.committedOffset(PARTITION) == 1);
+
+        assertEquals(6, jdbcTemplate.queryForObject("SELECT version FROM [Orders] WHERE id = 301", Integer.class));
+        assertEquals(List.of(302), orderStatusIndex.ids("DRAFT", 300, 10));
+        assertEquals(List.of(301), orderStatusIndex.ids("APPROVED", 300, 10));
+    }
+
+    private void send(OrderModel order, long offset) throws Exception {
+        String payload = objectMapper.writeValueAsString(order);
+        OffsetCommitTracker.Ticket ticket = offsetCommitTracker.register(PARTITION, offset, () -> { });
+        producerTemplate.send("direct:processOrder", exchange -> {
+            exchange.getIn().setBody(payload);
+            exchange.getIn().setHeader(KafkaConstants.KEY, String.valueOf(order.getId()));
+            exchange.setProperty(OffsetCommitTracker.TICKET, ticket);
+        });
+    }
+
+    private static OrderModel order(int id, int version, StatusEnum status) {
+        return OrderModel.builder()
+                .id(id)
+                .version(version)
+                .name("order-" + id)
+                .description("Bulk order")
+                .effectiveDate(OffsetDateTime.parse("2024-01-01T00:00:00Z"))
+                .status(status)
+                .build();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.apache.camel.test.spring.junit5.UseAdviceWith;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.OffsetDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The change feed of the V2 consumer on H2: a change whose publish failed is retried with its order
+ * record and published on the retry, although the MERGE then finds the row unchanged
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+    "spring.datasource.url=jdbc:h2:mem:route_change_feed;MODE=MSSQLServer;DATABASE_TO_UPPER=false",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.sql.init.mode=always",
+    // No broker: the retry and change topics are not created and their producers are mocked
+    "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration",
+    "camel.springboot.main-run-controller=false",
+    // Records are sent straight to direct:processOrder
+    "camel.springboot.route-filter-exclude-pattern=kafka:*,timer:*",
+    "order.sql.verify-plans=false",
+    "order.change-feed.enabled=true"
+})
+@CamelSpringBootTest
+@UseAdviceWith
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class OrderRouteV2ChangeFeedTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("order-demo", 0);
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Autowired
+    private ProducerTemplate producerTemplate;
+
+    @Autowired
+    private OffsetCommitTracker offsetCommitTracker;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private MockEndpoint changes;
+    private MockEndpoint retry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AdviceWith.adviceWith(camelContext, "retryOrderV2", r -> r.mockEndpointsAndSkip("kafka:*"));
+        AdviceWith.adviceWith(camelContext, "publishOrderChangesV2", r -> r.mockEndpointsAndSkip("kafka:*"));
+        camelContext.start();
+        changes = camelContext.getEndpoint("mock:kafka:order-changes", MockEndpoint.class);
+        retry = camelContext.getEndpoint("mock:kafka:order-demo.retry-1", MockEndpoint.class);
+    }
+
+    @Test
+    void testChangeIsPublishedOnce() throws Exception {
+        changes.expectedMessageCount(1);
+        changes.expectedHeaderReceived(KafkaConstants.KEY, "42");
+
+        send(1, 0, null);
+        send(1, 1, null);
+
+        changes.assertIsSatisfied();
+        assertEquals(0, retry.getReceivedCounter());
+    }
+
+    @Test
+    void testFailedPublishIsRetriedWithoutAChangeToTheRow() throws Exception {
+        changes.whenExchangeReceived(1, exchange -> {
+            throw new IllegalStateException("change topic unavailable");
+        });
+        retry.expectedMessageCount(1);
+        retry.expectedHeaderReceived(KafkaConstants.KEY, "42");
+
+        send(1, 0, null);
+
+        retry.assertIsSatisfied();
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT version FROM [Orders] WHERE id = 42", Integer.class));
+        assertEquals(0, offsetCommitTracker.inFlightCount());
+
+        // The retry consumer hands the record back with its Kafka headers as raw bytes
+        Exchange retried = retry.getReceivedExchanges().get(0);
+        Object unpublished = retried.getIn().getHeader(OrderChangeFeed.UNPUBLISHED_HEADER);
+        assertNotNull(unpublished, "the change travels with the retried record");
+        changes.reset();
+        changes.expectedMessageCount(1);
+        changes.expectedHeaderReceived(KafkaConstants.KEY, "42");
+
+        send(1, 1, (byte[]) unpublished);
+
+        changes.assertIsSatisfied();
+        JsonNode change = objectMapper.readTree(changes.getReceivedExchanges().get(0).getIn().getBody(byte[].class));
+        assertEquals(42, change.get("id").asInt());
+        assertEquals(1, change.get("version").asInt());
+        assertEquals(1, retry.getReceivedCounter(), "the retry succeeded");
+        assertEquals(1, offsetCommitTracker.committedOffset(PARTITION));
+    }
+
+    private void send(int version, long offset, byte[] unpublished) throws Exception {
+        String payload = objectMapper.writeValueAsString(OrderModel.builder()
+                .id(42)
+                .version(version)
+                .name("order-42")
+                .description("Published order")
+                .effectiveDate(OffsetDateTime.parse("2024-01-01T00:00:00Z"))
+                .status(StatusEnum.DRAFT)
+                .build());
+        OffsetCommitTracker.Ticket ticket = offsetCommitTracker.register(PARTITION, offset, () -> { });
+        producerTemplate.send("direct:processOrder", exchange -> {
+            exchange.getIn().setBody(payload);
+            exchange.getIn().setHeader(KafkaConstants.KEY, "42");
+            if (unpublished != null) {
+                exchange.getIn().setHeader(OrderRetryPolicy.ATTEMPT_HEADER, "1".getBytes());
+                exchange.getIn().setHeader(OrderChangeFeed.UNPUBLISHED_HEADER, unpublished);
+            }
+            exchange.setProperty(OffsetCommitTracker.TICKET, ticket);
+        });
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.apache.camel.test.spring.junit5.UseAdviceWith;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * A failing single-row upsert on the V2 consumer: the builder-level handlers must complete the
+ * record's offset, count it and republish it to the retry topic of its next attempt, also when
+ * the record fails in the per-record replay of a batch
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+    "spring.datasource.url=jdbc:h2:mem:route_failure;MODE=MSSQLServer;DATABASE_TO_UPPER=false",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.sql.init.mode=always",
+    // No broker: the retry topics are not created and their producer is mocked
+    "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration",
+    "camel.springboot.main-run-controller=false",
+    // Records are sent straight to direct:processOrder
+    "camel.springboot.route-filter-exclude-pattern=kafka:*,timer:*",
+    "order.sql.verify-plans=false"
+})
+@CamelSpringBootTest
+@UseAdviceWith
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class OrderRouteV2FailureTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("order-demo", 0);
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Autowired
+    private ProducerTemplate producerTemplate;
+
+    @Autowired
+    private OffsetCommitTracker offsetCommitTracker;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private ShardedOrderWriter orderWriter;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AdviceWith.adviceWith(camelContext, "retryOrderV2", r -> r.mockEndpointsAndSkip("kafka:*"));
+        camelContext.start();
+        when(orderWriter.upsert(any())).thenThrow(new CannotAcquireLockException("Transaction was deadlocked"));
+    }
+
+    @Test
+    void testFailedUpsertCompletesTheRecord() throws Exception {
+        AtomicBoolean committed = new AtomicBoolean();
+        OffsetCommitTracker.Ticket ticket = offsetCommitTracker.register(PARTITION, 7, () -> committed.set(true));
+        send(ticket, null);
+
+        assertTrue(committed.get(), "the offset of the failed record is committed");
+        assertEquals(7, offsetCommitTracker.committedOffset(PARTITION));
+        assertEquals(0, offsetCommitTracker.inFlightCount());
+        assertEquals(1.0, meterRegistry.get("orders.outcome").tag("outcome", UpsertOutcome.FAILED.tag()).counter().count());
+    }
+
+    @Test
+    void testFailedUpsertIsRepublishedToTheFirstRetryTopic() throws Exception {
+        MockEndpoint retry = camelContext.getEndpoint("mock:kafka:order-demo.retry-1", MockEndpoint.class);
+        retry.expectedMessageCount(1);
+        retry.expectedHeaderReceived(KafkaConstants.KEY, "42");
+        retry.expectedHeaderReceived(OrderRetryPolicy.ATTEMPT_HEADER, "1");
+
+        send(offsetCommitTracker.register(PARTITION, 7, () -> { }), null);
+
+        retry.assertIsSatisfied();
+    }
+
+    @Test
+    void testRetryFailingAgainMovesToTheNextRetryTopic() throws Exception {
+        MockEndpoint retry = camelContext.getEndpoint("mock:kafka:order-demo.retry-2", MockEndpoint.class);
+        retry.expectedMessageCount(1);
+        retry.expectedHeaderReceived(OrderRetryPolicy.ATTEMPT_HEADER, "2");
+
+        send(offsetCommitTracker.register(PARTITION, 8, () -> { }), "1");
+
+        retry.assertIsSatisfied();
+        assertEquals(0, offsetCommitTracker.inFlightCount());
+    }
+
+    @Test
+    void testRetryFailingAgainInABatchMovesToTheNextRetryTopic() throws Exception {
+        when(orderWriter.upsertAll(any(), any())).thenThrow(new CannotAcquireLockException("Transaction was deadlocked"));
+        MockEndpoint retry = camelContext.getEndpoint("mock:kafka:order-demo.retry-2", MockEndpoint.class);
+        retry.expectedMessageCount(1);
+        retry.expectedHeaderReceived(KafkaConstants.KEY, "42");
+        retry.expectedHeaderReceived(OrderRetryPolicy.ATTEMPT_HEADER, "2");
+        retry.expectedHeaderReceived(OrderRetryPolicy.ORIGIN_HEADER, "order-demo.retry-1");
+
+        // The batch fails as a whole, its replay fails the record again
+        OffsetCommitTracker.Ticket ticket = offsetCommitTracker.register(PARTITION, 9, () -> { });
+        producerTemplate.send("direct:upsertOrderBatch", exchange -> {
+            exchange.getIn().setBody(order());
+            exchange.getIn().setHeader(KafkaConstants.KEY, "42");
+            exchange.getIn().setHeader(KafkaConstants.TOPIC, "order-demo.retry-1");
+            exchange.getIn().setHeader(OrderRetryPolicy.ATTEMPT_HEADER, "1".getBytes());
+            exchange.setProperty(OffsetCommitTracker.TICKET, ticket);
+        });
+
+        retry.assertIsSatisfied();
+        await().atMost(Duration.ofSeconds(10)).until(() -> offsetCommitTracker.inFlightCount() == 0);
+        assertEquals(0, camelContext.getEndpoint("mock:kafka:order-demo.retry-1", MockEndpoint.class).getReceivedCounter());
+    }
+
+    @Test
+    void testFailedUpsertIsNotSkippedAsUnchangedOnRetry() throws Exception {
+        send(null, null);
+        send(null, "1");
+
+        verify(orderWriter, times(2)).upsert(any());
+    }
+
+    private void send(OffsetCommitTracker.Ticket ticket, String attempt) throws Exception {
+        String payload = objectMapper.writeValueAsString(order());
+        producerTemplate.send("direct:processOrder", exchange -> {
+            exchange.getIn().setBody(payload);
+            exchange.getIn().setHeader(KafkaConstants.KEY, "42");
+            if (attempt != null) {
+                exchange.getIn().setHeader(OrderRetryPolicy.ATTEMPT_HEADER, attempt);
+            }
+            if (ticket != null) {
+                exchange.setProperty(OffsetCommitTracker.TICKET, ticket);
+            }
+        });
+    }
+
+    private static OrderModel order() {
+        return OrderModel.builder()
+                .id(42)
+                .version(1)
+                .name("order-42")
+                .description("Deadlocked order")
+                .effectiveDate(OffsetDateTime.parse("2024-01-01T00:00:00Z"))
+                .status(StatusEnum.DRAFT)
+                .build();
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.AdviceWith;
+import org.apache.camel.component.kafka.KafkaConstants;
+import org.apache.camel.component.kafka.consumer.KafkaManualCommit;
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.apache.camel.test.spring.junit5.UseAdviceWith;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * The worker lanes of the V2 consumer: one order stays in order on one lane, and with manual commit
+ * the offsets only move past a record once every lane finished the records below it
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+    "spring.datasource.url=jdbc:h2:mem:route_lanes;MODE=MSSQLServer;DATABASE_TO_UPPER=false",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.sql.init.mode=always",
+    // No broker: the consumer is fed through direct:consumeOrder
+    "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration",
+    "camel.springboot.main-run-controller=false",
+    "camel.springboot.route-filter-exclude-pattern=timer:*,orderRetryV2-*," + OrderCatchUpController.CATCH_UP_ROUTE,
+    "order.sql.verify-plans=false",
+    "order.consumer.lanes=4",
+    "order.consumer.manual-commit=true"
+})
+@CamelSpringBootTest
+@UseAdviceWith
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class OrderRouteV2LaneTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("order-demo", 0);
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @Autowired
+    private ProducerTemplate producerTemplate;
+
+    @Autowired
+    private OffsetCommitTracker offsetCommitTracker;
+
+    @MockBean
+    private ShardedOrderWriter orderWriter;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    // Upserts per order id, in the order the writer saw them, and the lane thread of each
+    private final Map<Integer, List<Integer>> versions = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<String>> threads = new ConcurrentHashMap<>();
+    private final List<Long> commits = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AdviceWith.adviceWith(camelContext, OrderCatchUpController.STREAMING_ROUTE,
+                r -> r.replaceFromWith("direct:consumeOrder"));
+        camelContext.start();
+        doAnswer(invocation -> {
+            record(invocation.getArgument(0));
+            return null;
+        }).when(orderWriter).upsert(any());
+    }
+
+    @Test
+    void testSameKeyStaysInOrderOnOneLane() throws Exception {
+        long offset = 0;
+        for (int version = 1; version <= 25; version++) {
+            for (int id = 1; id <= 8; id++) {
+                consume(id, version, offset++);
+            }
+        }
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> offsetCommitTracker.committedOffset(PARTITION) == 199);
+        for (int id = 1; id <= 8; id++) {
+            List<Integer> expected = new ArrayList<>();
+            for (int version = 1; version <= 25; version++) {
+                expected.add(version);
+            }
+            assertEquals(expected, versions.get(id), "order " + id + " is upserted in offset order");
+            assertEquals(1, threads.get(id).size(), "order " + id + " stays on one lane");
+        }
+        assertEquals(0, offsetCommitTracker.inFlightCount());
+    }
+
+    @Test
+    void testWatermarkWaitsForTheSlowerLane() throws Exception {
+        // Orders 1 and 2 hash to different lanes, the lane of order 1 is held up
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            OrderModel order = invocation.getArgument(0);
+            if (order.getId() == 1) {
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+            }
+            record(order);
+            return null;
+        }).when(orderWriter).upsert(any());
+
+        try {
+            consume(1, 1, 0);
+            consume(2, 1, 1);
+            consume(2, 2, 2);
+
+            await().atMost(Duration.ofSeconds(10)).until(() -> versions.containsKey(2) && versions.get(2).size() == 2);
+            assertEquals(-1, offsetCommitTracker.committedOffset(PARTITION), "offsets 1 and 2 wait for offset 0");
+            assertTrue(commits.isEmpty());
+        } finally {
+            release.countDown();
+        }
+
+        await().atMost(Duration.ofSeconds(10)).until(() -> offsetCommitTracker.committedOffset(PARTITION) == 2);
+        assertEquals(Collections.singletonList(2L), commits, "only the watermark is committed");
+        assertEquals(0, offsetCommitTracker.inFlightCount());
+    }
+
+    private void record(OrderModel order) {
+        versions.computeIfAbsent(order.getId(), id -> new CopyOnWriteArrayList<>()).add(order.getVersion());
+        threads.computeIfAbsent(order.getId(), id -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+    }
+
+    private void consume(int id, int version, long offset) throws Exception {
+        String payload = objectMapper.writeValueAsString(OrderModel.builder()
+                .id(id)
+                .version(version)
+                .name("order-" + id)
+                .description("Lane order")
+                .effectiveDate(OffsetDateTime.parse("2024-01-01T00:00:00Z"))
+                .status(StatusEnum.DRAFT)
+                .build());
+        KafkaManualCommit commit = () -> commits.add(offset);
+        producerTemplate.send("direct:consumeOrder", exchange -> {
+            exchange.getIn().setBody(payload);
+            exchange.getIn().setHeader(KafkaConstants.KEY, String.valueOf(id));
+            exchange.getIn().setHeader(KafkaConstants.TOPIC, PARTITION.topic());
+            exchange.getIn().setHeader(KafkaConstants.PARTITION, PARTITION.partition());
+            exchange.getIn().setHeader(KafkaConstants.OFFSET, offset);
+            exchange.getIn().setHeader(KafkaConstants.MANUAL_COMMIT, commit);
+        });
+    }
+}
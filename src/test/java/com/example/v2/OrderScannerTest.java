@@ -0,0 +1,95 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderScannerTest {
+
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:scanner;MODE=MSSQLServer;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS [Orders]");
+        jdbcTemplate.execute("CREATE TABLE [Orders] (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, " +
+                "description VARCHAR(1000), effective_date DATE, status VARCHAR(50), row_hash BIGINT, version INT)");
+        for (int id = 1; id <= 25; id++) {
+            jdbcTemplate.update("INSERT INTO [Orders] (id, name, description, effective_date, status, version) " +
+                            "VALUES (?, ?, ?, ?, ?, ?)",
+                    id, "order-" + id, null, id % 2 == 0 ? LocalDate.of(2024, 1, id) : null,
+                    id % 5 == 0 ? "DONE" : "PENDING", id);
+        }
+    }
+
+    @Test
+    void testScanStreamsEveryMatchingRowInIdOrderAcrossPages() {
+        OrderScanner scanner = new OrderScanner(dataSource, new OrderColumnTypes(dataSource), 4, 2);
+
+        List<Integer> ids = new ArrayList<>();
+        scanner.scan("PENDING").forEachRemaining(order -> ids.add(order.getId()));
+
+        assertEquals(20, ids.size());
+        assertFalse(ids.contains(5));
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i) > ids.get(i - 1));
+        }
+    }
+
+    @Test
+    void testRowsAreMappedByColumn() {
+        OrderScanner scanner = new OrderScanner(dataSource, new OrderColumnTypes(dataSource), 10, 10);
+
+        Iterator<OrderEntity> scan = scanner.scan("PENDING");
+        OrderEntity first = scan.next();
+        OrderEntity second = scan.next();
+
+        assertEquals(1, first.getId());
+        assertEquals("order-1", first.getName());
+        assertNull(first.getDescription());
+        assertNull(first.getEffectiveDate());
+        assertEquals("PENDING", first.getStatus());
+        assertEquals(1, first.getVersion());
+        assertEquals(LocalDate.of(2024, 1, 2), second.getEffectiveDate());
+    }
+
+    @Test
+    void testPageSeeksPastTheLastId() {
+        OrderScanner scanner = new OrderScanner(dataSource, new OrderColumnTypes(dataSource), 3, 3);
+
+        List<OrderEntity> page = scanner.page("PENDING", 3);
+
+        assertEquals(3, page.size());
+        assertEquals(4, page.get(0).getId());
+        assertEquals(7, page.get(2).getId());
+    }
+
+    @Test
+    void testFindByIdsReturnsTheExistingRowsInIdOrder() {
+        OrderScanner scanner = new OrderScanner(dataSource, new OrderColumnTypes(dataSource), 4, 2);
+
+        List<OrderEntity> rows = scanner.findByIds(Arrays.asList(12, 3, 99, 7));
+
+        assertEquals(Arrays.asList(3, 7, 12), rows.stream().map(OrderEntity::getId).collect(Collectors.toList()));
+        assertEquals("order-12", rows.get(2).getName());
+    }
+
+    @Test
+    void testEmptyScan() {
+        OrderScanner scanner = new OrderScanner(dataSource, new OrderColumnTypes(dataSource), 4, 2);
+
+        assertFalse(scanner.scan("CANCELLED").hasNext());
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.v2;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderStatusIndexTest {
+
+    private final DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:statusindex;MODE=MSSQLServer;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private JdbcTemplate jdbcTemplate;
+    private OrderStatusIndex index;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS [Orders]");
+        jdbcTemplate.execute("CREATE TABLE [Orders] (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, " +
+                "description VARCHAR(1000), effective_date DATE, status VARCHAR(50), row_hash BIGINT, version INT)");
+        for (int id = 1; id <= 10; id++) {
+            jdbcTemplate.update("INSERT INTO [Orders] (id, name, status) VALUES (?, 'order', ?)",
+                    id, id <= 6 ? "DRAFT" : "PENDING");
+        }
+        // Pages of three rows, so the rebuild has to seek across pages
+        index = new OrderStatusIndex(true, 10, new OrderScanner(dataSource, new OrderColumnTypes(dataSource), 3, 3), meterRegistry);
+    }
+
+    @Test
+    void testRebuildIndexesEveryRowByStoredStatus() {
+        assertFalse(index.isReady());
+
+        index.rebuild();
+
+        assertTrue(index.isReady());
+        assertEquals(6, index.count("DRAFT"));
+        assertEquals(Arrays.asList(7, 8, 9, 10), index.ids("PENDING", 0, 100));
+        assertEquals(6, meterRegistry.get("orders.status.count").tag("status", "DRAFT").gauge().value());
+        assertEquals(4, meterRegistry.get("orders.status.count").tag("status", "PENDING").gauge().value(),
+                "statuses written by other systems are exported too");
+    }
+
+    @Test
+    void testFailedRebuildIsRetriedInTheBackground() {
+        jdbcTemplate.execute("ALTER TABLE [Orders] RENAME TO [Orders_offline]");
+
+        index.onApplicationReady();
+        await().during(Duration.ofMillis(50)).atMost(Duration.ofSeconds(1)).until(() -> !index.isReady());
+
+        jdbcTemplate.execute("ALTER TABLE [Orders_offline] RENAME TO [Orders]");
+        await().atMost(Duration.ofSeconds(5)).until(index::isReady);
+        assertEquals(6, index.count("DRAFT"));
+        index.stop();
+    }
+
+    @Test
+    void testUpdateMovesTheOrderBetweenStatuses() {
+        index.rebuild();
+
+        index.update(2, "APPROVED");
+        index.update(11, "APPROVED");
+
+        assertEquals(5, index.count("DRAFT"));
+        assertEquals(Arrays.asList(2, 11), index.ids("APPROVED", 0, 100));
+        assertEquals(2, index.counts().get("APPROVED"));
+    }
+
+    @Test
+    void testIdsArePagedAfterTheGivenId() {
+        index.rebuild();
+
+        assertEquals(Arrays.asList(3, 4), index.ids("DRAFT", 2, 2));
+        assertEquals(Collections.emptyList(), index.ids("DRAFT", 6, 2));
+        assertEquals(Collections.emptyList(), index.ids("CANCELLED", 0, 2));
+    }
+
+    @Test
+    void testDisabledIndexIgnoresUpdates() {
+        OrderStatusIndex disabled = new OrderStatusIndex(false, 10, new OrderScanner(dataSource, new OrderColumnTypes(dataSource), 3, 3), new SimpleMeterRegistry());
+
+        disabled.update(1, "DONE");
+
+        assertEquals(0, disabled.count("DONE"));
+        assertFalse(disabled.isReady());
+    }
+}
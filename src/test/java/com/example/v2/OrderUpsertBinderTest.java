@@ -0,0 +1,84 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderUpsertBinderTest {
+
+    private static final OrderModel ORDER = OrderModel.builder()
+            .id(42)
+            .version(3)
+            .name("widget")
+            .description("a widget")
+            .effectiveDate(OffsetDateTime.of(2024, 3, 1, 23, 30, 0, 0, ZoneOffset.ofHours(13)))
+            .status(StatusEnum.DONE)
+            .build();
+
+    @Test
+    void testBindsFieldsInStatementOrder() throws Exception {
+        Map<Integer, Object> params = new HashMap<>();
+        OrderUpsertBinder.bind(recording(params), ORDER);
+
+        assertEquals(7, params.size());
+        assertEquals(42, params.get(1));
+        assertEquals("widget", params.get(2));
+        assertEquals("a widget", params.get(3));
+        assertEquals(LocalDate.of(2024, 3, 1), params.get(4), "the local date of the event is stored");
+        assertEquals("DONE", params.get(5));
+        assertEquals(ORDER.businessFingerprint(), params.get(6));
+        assertEquals(3, params.get(7));
+    }
+
+    @Test
+    void testBindsNullEffectiveDate() throws Exception {
+        Map<Integer, Object> params = new HashMap<>();
+        OrderModel order = OrderModel.builder().id(1).name("widget").status(StatusEnum.DRAFT).build();
+
+        OrderUpsertBinder.bind(recording(params), order);
+
+        assertTrue(params.containsKey(4));
+        assertNull(params.get(4));
+    }
+
+    @Test
+    void testModelFingerprintMatchesEntityFingerprint() {
+        OrderEntity entity = OrderEntity.builder()
+                .id(42)
+                .version(3)
+                .name("widget")
+                .description("a widget")
+                .effectiveDate(LocalDate.of(2024, 3, 1))
+                .status("DONE")
+                .build();
+
+        assertEquals(entity.businessFingerprint(), ORDER.businessFingerprint(),
+                "rows written before the binder must keep matching the fingerprint cache");
+    }
+
+    /**
+     * A PreparedStatement that only records its parameters, setNull as a null value
+     */
+    private static PreparedStatement recording(Map<Integer, Object> params) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                OrderUpsertBinderTest.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("set") && args != null && args[0] instanceof Integer) {
+                        params.put((Integer) args[0], method.getName().equals("setNull") ? null : args[1]);
+                    }
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.v2;
+
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@code bean-validator://ValidateModel} endpoint the consumer used to call per
+ * message with {@link OrderModelValidator}; run with -prof gc for allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderValidationBenchmark {
+
+    private DefaultCamelContext camelContext;
+    private ProducerTemplate producerTemplate;
+    private OrderModelValidator validator;
+    private OrderModel order;
+
+    @Setup
+    public void setUp() {
+        camelContext = new DefaultCamelContext();
+        camelContext.start();
+        producerTemplate = camelContext.createProducerTemplate();
+        validator = new OrderModelValidator(new SimpleMeterRegistry());
+
+        order = OrderModel.builder()
+                .id(4242)
+                .version(3)
+                .name("widget")
+                .description("a widget")
+                .effectiveDate(OffsetDateTime.now())
+                .status(StatusEnum.APPROVED)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        camelContext.stop();
+    }
+
+    @Benchmark
+    public Object beanValidatorEndpoint() {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(order);
+        return producerTemplate.send("bean-validator://ValidateModel", exchange);
+    }
+
+    @Benchmark
+    public Object orderModelValidator() throws Exception {
+        Exchange exchange = new DefaultExchange(camelContext);
+        exchange.getIn().setBody(order);
+        validator.validate(exchange);
+        return exchange;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.v2;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderVersionGateTest {
+
+    @Test
+    void testStaleVersionsAreDropped() {
+        OrderVersionGate gate = new OrderVersionGate(true, 1024, new SimpleMeterRegistry());
+
+        assertTrue(gate.admit(42, 2));
+        assertTrue(gate.admit(42, 3));
+        assertFalse(gate.admit(42, 1));
+        assertTrue(gate.admit(42, 3), "replays of the current version are left to the fingerprint cache");
+        assertTrue(gate.admit(43, 1), "versions are tracked per order");
+
+        assertEquals(1, gate.staleCount());
+    }
+
+    @Test
+    void testDisabledGateAdmitsEverything() {
+        OrderVersionGate gate = new OrderVersionGate(false, 1024, new SimpleMeterRegistry());
+
+        assertTrue(gate.admit(42, 5));
+        assertTrue(gate.admit(42, 1));
+        assertEquals(0, gate.staleCount());
+    }
+}
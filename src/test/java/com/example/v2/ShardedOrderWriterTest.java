@@ -0,0 +1,163 @@
+package com.example.v2;
+
+import com.example.OrderEntity;
+import com.example.OrderModel;
+import com.example.StatusEnum;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedOrderWriterTest {
+
+    private static final int SHARDS = 3;
+
+    private final List<DataSource> dataSources = new ArrayList<>();
+    private OrderShards shards;
+    private OrderColumnTypes columnTypes;
+    private ShardedOrderWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        for (int shard = 0; shard < SHARDS; shard++) {
+            DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                    "jdbc:h2:mem:shard" + shard + ";MODE=MSSQLServer;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.execute("DROP TABLE IF EXISTS [Orders]");
+            jdbcTemplate.execute("CREATE TABLE [Orders] (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, " +
+                    "description VARCHAR(1000), effective_date DATE, status VARCHAR(50), row_hash BIGINT, version INT)");
+            dataSources.add(dataSource);
+        }
+        shards = new OrderShards(dataSources);
+        columnTypes = new OrderColumnTypes(dataSources.get(0));
+        writer = new ShardedOrderWriter(shards,
+                new OrderUpsertBinder(new JdbcTemplate(dataSources.get(0)), columnTypes),
+                new OrderBulkWriter(dataSources.get(0), 7), columnTypes, 7);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.close();
+    }
+
+    @Test
+    void testEveryOrderIsWrittenToTheShardOfItsId() throws Exception {
+        assertEquals(30, writer.write(orders(30, StatusEnum.DRAFT), null));
+
+        int total = 0;
+        for (int shard = 0; shard < SHARDS; shard++) {
+            List<Integer> ids = new JdbcTemplate(dataSources.get(shard)).queryForList("SELECT id FROM [Orders]", Integer.class);
+            assertFalse(ids.isEmpty(), "sequential ids are spread over every shard");
+            for (int id : ids) {
+                assertEquals(shard, shards.shardOf(id), "order " + id + " is on shard " + shard);
+            }
+            total += ids.size();
+        }
+        assertEquals(30, total);
+    }
+
+    @Test
+    void testRewritingTheSameVersionsTouchesNoRow() throws Exception {
+        writer.write(orders(30, StatusEnum.DRAFT), null);
+
+        assertEquals(0, writer.write(orders(30, StatusEnum.DRAFT), null));
+    }
+
+    @Test
+    void testScansMergeTheShardsInIdOrder() throws Exception {
+        writer.write(orders(30, StatusEnum.DRAFT), null);
+        OrderScanner scanner = new OrderScanner(shards.dataSources(), columnTypes, 4, 2);
+
+        List<Integer> ids = new ArrayList<>();
+        scanner.scan("DRAFT").forEachRemaining(order -> ids.add(order.getId()));
+
+        assertEquals(30, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i + 1, ids.get(i));
+        }
+        assertEquals(List.of(11, 12, 13), ids(scanner.page("DRAFT", 10, 3)));
+        assertEquals("order-17", scanner.findById(17).getName());
+        assertNull(scanner.findById(31));
+    }
+
+    @Test
+    void testOrdersOfCommittedShardsAreReportedWhenAnotherShardFails() {
+        new JdbcTemplate(dataSources.get(1)).execute("DROP TABLE [Orders]");
+        // Shard 0 commits through a stand-in for the MERGE, which H2 does not parse; shard 1 has no table
+        OrderShards twoShards = new OrderShards(dataSources.subList(0, 2));
+        OrderUpsertBinder committing = new OrderUpsertBinder(new JdbcTemplate(dataSources.get(0)), columnTypes) {
+            @Override
+            public int upsertAll(List<OrderModel> orders, Consumer<OrderModel> written) {
+                orders.forEach(written);
+                return orders.size();
+            }
+        };
+        ShardedOrderWriter twoShardWriter = new ShardedOrderWriter(twoShards, committing,
+                new OrderBulkWriter(dataSources.get(0), 7), columnTypes, 7);
+        List<Integer> written = new ArrayList<>();
+
+        try {
+            assertThrows(DataAccessException.class,
+                    () -> twoShardWriter.upsertAll(orders(30, StatusEnum.DRAFT), order -> written.add(order.getId())));
+        } finally {
+            twoShards.close();
+        }
+
+        assertFalse(written.isEmpty());
+        for (int id = 1; id <= 30; id++) {
+            assertEquals(twoShards.shardOf(id) == 0, written.contains(id), "order " + id + " is reported if its shard committed");
+        }
+    }
+
+    @Test
+    void testFanOutReportsTheShardsThatSucceededBeforeRethrowing() {
+        Map<Integer, String> work = new TreeMap<>(Map.of(0, "a", 1, "b", 2, "c"));
+        Map<Integer, String> completed = new TreeMap<>();
+
+        SQLException failure = assertThrows(SQLException.class, () -> shards.fanOut(work, (shard, shardWork) -> {
+            if (shard == 1) {
+                throw new SQLException("shard 1 is down");
+            }
+            return shardWork.toUpperCase();
+        }, completed::put));
+
+        assertEquals("shard 1 is down", failure.getMessage());
+        assertEquals(Map.of(0, "A", 2, "C"), completed);
+    }
+
+    @Test
+    void testShardOfIsStable() {
+        for (int id = -1000; id < 1000; id++) {
+            int shard = OrderShards.shardOf(id, SHARDS);
+            assertTrue(shard >= 0 && shard < SHARDS);
+            assertEquals(shard, OrderShards.shardOf(id, SHARDS));
+        }
+        assertEquals(0, OrderShards.shardOf(42, 1));
+    }
+
+    private static List<OrderModel> orders(int count, StatusEnum status) {
+        List<OrderModel> orders = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            orders.add(OrderModel.builder().id(id).version(1).name("order-" + id).status(status).build());
+        }
+        return orders;
+    }
+
+    private static List<Integer> ids(List<OrderEntity> orders) {
+        List<Integer> ids = new ArrayList<>();
+        orders.forEach(order -> ids.add(order.getId()));
+        return ids;
+    }
+}